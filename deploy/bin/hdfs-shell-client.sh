@@ -0,0 +1,17 @@
+#!/bin/bash
+# Executes one command in the running HDFS Shell daemon and exits with its result code.
+# The daemon is started in the background if it's not running (unless HDFS_SHELL_AUTO_START=false).
+SCRIPT_DIR="$( cd "$( dirname "$(readlink -f "${BASH_SOURCE[0]}" )" )" && pwd )"
+LIB_DIR=${SCRIPT_DIR}/../lib
+export SOCKET_FILEPATH=${SOCKET_FILEPATH:-/var/tmp/hdfs-shell.sock}
+
+if [ "${HDFS_SHELL_AUTO_START}" != "false" ]; then
+    DAEMON_OPTS="-Ddaemon.command=${SCRIPT_DIR}/hdfs-shell-daemon.sh"
+fi
+
+# the client needs neither Hadoop nor Spring, a short classpath starts faster
+CLIENT_CP=$(ls ${LIB_DIR}/hdfs-shell-*.jar ${LIB_DIR}/junixsocket-*.jar ${LIB_DIR}/native-lib-loader-*.jar \
+    ${LIB_DIR}/slf4j-api-*.jar ${LIB_DIR}/logback-*.jar 2>/dev/null | tr '\n' ':')
+
+exec java -Xshare:auto -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xmx64m \
+    -Dsocket.filepath=${SOCKET_FILEPATH} ${DAEMON_OPTS} -cp "${CLIENT_CP}" org.mvnsearch.spring.boot.shell.UnixClient "$@"
@@ -0,0 +1,63 @@
+#!/bin/bash
+# Measures the time to the first command output of hdfs-shell.sh in one-shot mode (hdfs-shell.sh ls <path>)
+# and in interactive mode (ls <path> typed to the shell), and the time until the shell exits.
+# Usage: hdfs-shell-startup-benchmark.sh [runs] [path]
+SCRIPT_DIR="$( cd "$( dirname "$(readlink -f "${BASH_SOURCE[0]}" )" )" && pwd )"
+RUNS=${1:-5}
+TARGET=${2:-/}
+# the "Found N items" header or the first listed file
+OUTPUT_PATTERN='Found [0-9]+ items|[-d][-rwxsStT]{9}[+ ]'
+
+one_shot() {
+    "${SCRIPT_DIR}/hdfs-shell.sh" ls "${TARGET}"
+}
+
+interactive() {
+    printf 'ls %s\nexit\n' "${TARGET}" | HDFS_SHELL_NO_BANNER=1 "${SCRIPT_DIR}/hdfs-shell.sh"
+}
+
+now_millis() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# prints "<first output ms> <exit ms>" of one run
+measure() {
+    local start first end
+    start=$(now_millis)
+    first=$("$1" 2>&1 | {
+        found=""
+        while IFS= read -r line; do
+            if [ -z "${found}" ] && [[ ${line} =~ ${OUTPUT_PATTERN} ]]; then
+                found=$(now_millis)
+            fi
+        done
+        echo "${found}"
+    })
+    end=$(now_millis)
+    if [ -z "${first}" ]; then
+        echo "no output of ls ${TARGET} found" >&2
+        return 1
+    fi
+    echo "$(( first - start )) $(( end - start ))"
+}
+
+report() {
+    local mode=$1 total_first=0 total_end=0 min_first="" max_first=0 result first end
+    for ((i = 1; i <= RUNS; i++)); do
+        result=$(measure "${mode}") || exit 1
+        read -r first end <<< "${result}"
+        echo "${mode} run ${i}: first output ${first} ms, exit ${end} ms"
+        total_first=$(( total_first + first ))
+        total_end=$(( total_end + end ))
+        if [ -z "${min_first}" ] || [ "${first}" -lt "${min_first}" ]; then
+            min_first=${first}
+        fi
+        if [ "${first}" -gt "${max_first}" ]; then
+            max_first=${first}
+        fi
+    done
+    echo "${mode}: first output avg $(( total_first / RUNS )) ms (min ${min_first}, max ${max_first}), exit avg $(( total_end / RUNS )) ms"
+}
+
+report one_shot
+report interactive
@@ -4,4 +4,9 @@ HADOOP_DIR=${HADOOP_CONF_DIR:-/etc/hadoop/conf}
 
 echo "Launching HDFS Shell with HADOOP_CONF_DIR: ${HADOOP_DIR}"
 
-java -Xms200m -Xmx400m -cp ${SCRIPT_DIR}/../lib/*:${HADOOP_DIR} com.avast.server.hdfsshell.MainApp "$@"
+# one-shot commands are short-lived, the C2 compiler and the parallel GC only delay them
+if [ $# -gt 0 ]; then
+    JAVA_OPTS=${HDFS_SHELL_ONE_SHOT_OPTS:--XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xshare:auto}
+fi
+
+java -Xms200m -Xmx400m ${JAVA_OPTS} -cp ${SCRIPT_DIR}/../lib/*:${HADOOP_DIR} com.avast.server.hdfsshell.MainApp "$@"
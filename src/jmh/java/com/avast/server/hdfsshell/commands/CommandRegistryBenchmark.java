@@ -0,0 +1,40 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.shell.Command;
+import org.apache.hadoop.fs.shell.CommandFactory;
+import org.apache.hadoop.fs.shell.FsCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of a Hadoop command - a new {@link CommandFactory} per call vs. {@link CommandRegistry}, run by <code>gradlew jmh</code>.
+ *
+ * @author Vitasek L.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandRegistryBenchmark {
+
+    private final Configuration conf = new Configuration();
+    private final CommandRegistry registry = new CommandRegistry();
+
+    @Benchmark
+    public Command commandFactory() {
+        final CommandFactory commandFactory = new CommandFactory(conf);
+        FsCommand.registerCommands(commandFactory);
+        return commandFactory.getInstance("-ls", conf);
+    }
+
+    @Benchmark
+    public Command commandRegistry() {
+        return registry.getInstance("-ls", conf);
+    }
+}
@@ -0,0 +1,60 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Setup of a command - a new {@link Configuration} and file system lookup per command vs. {@link ShellSession},
+ * run by <code>gradlew jmh</code>. The directory is a local one (the default file system of the benchmark).
+ *
+ * @author Vitasek L.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShellSessionBenchmark {
+
+    private File dir;
+    private Path path;
+    private ShellSession session;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("session-benchmark").toFile();
+        path = new Path(dir.getAbsolutePath());
+        session = new ShellSession(new Configuration());
+        session.setCurrentDir(dir.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.close();
+        dir.delete();
+    }
+
+    @Benchmark
+    public boolean perCommandSetup() throws IOException {
+        final FileSystem fs = FileSystem.get(new Configuration());
+        fs.setWorkingDirectory(path);
+        return FileSystem.get(new Configuration()).exists(path);
+    }
+
+    @Benchmark
+    public boolean session() throws IOException {
+        return session.getFileSystem().exists(path);
+    }
+}
@@ -0,0 +1,86 @@
+package com.avast.server.hdfsshell.engine;
+
+import com.avast.server.hdfsshell.commands.CommandRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.shell.Command;
+import org.mvnsearch.spring.boot.shell.FramedProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of <code>cat</code> into the framed output of the daemon - Hadoop's <code>cat</code> vs. {@link CatCommand},
+ * run by <code>gradlew jmh</code>. The file is a local file (the default file system of the benchmark), the socket is replaced by a null stream.
+ *
+ * @author Vitasek L.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CatBenchmark {
+
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+
+    private final Configuration conf = new Configuration();
+    private final CommandRegistry commandRegistry = new CommandRegistry();
+    private File file;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("cat-benchmark", ".bin");
+        final byte[] data = new byte[1024 * 1024];
+        new Random(0).nextBytes(data);
+        try (OutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < FILE_SIZE / data.length; i++) {
+                os.write(data);
+            }
+        }
+        final OutputStream nullStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        final FramedProtocol.FrameWriter frames = new FramedProtocol.FrameWriter(nullStream, FramedProtocol.VERSION);
+        out = new PrintStream(frames.stream(FramedProtocol.STDOUT, 1), false, "UTF-8");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int hadoopCat() {
+        final Command command = commandRegistry.getInstance("-cat", conf);
+        command.out = out;
+        command.err = out;
+        final int result = command.run(file.getAbsolutePath());
+        out.flush();
+        return result;
+    }
+
+    @Benchmark
+    public int nativeCat() {
+        final int result = new CatCommand(conf, out, out).run(file.getAbsolutePath());
+        out.flush();
+        return result;
+    }
+}
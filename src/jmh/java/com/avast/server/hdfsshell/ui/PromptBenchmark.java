@@ -0,0 +1,59 @@
+package com.avast.server.hdfsshell.ui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the prompt, run by <code>gradlew jmh</code>.
+ *
+ * @author Vitasek L.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PromptBenchmark {
+
+    private static final String ALL_ESCAPES_PROMPT = "\\[\\e[36m\\]\\u@\\h(\\H) \\s-\\v \\V \\w \\W \\# \\! \\d \\t \\T \\@ \\A\\n\\\\ \\$ \\a\\r";
+
+    private SimpleBashPromptInterpreter defaultPrompt;
+    private SimpleBashPromptInterpreter allEscapesPrompt;
+
+    @Setup
+    public void setUp() {
+        defaultPrompt = create(ShellPromptProvider.DEFAULT_PROMPT);
+        allEscapesPrompt = create(ALL_ESCAPES_PROMPT);
+    }
+
+    @Benchmark
+    public String defaultPrompt() {
+        return defaultPrompt.interpret();
+    }
+
+    @Benchmark
+    public String allEscapesPrompt() {
+        return allEscapesPrompt.interpret();
+    }
+
+    private static SimpleBashPromptInterpreter create(String ps1) {
+        return new SimpleBashPromptInterpreter.Builder(ps1).
+                setAppName(() -> "hdfs-shell").setAppVersion(() -> "1.0").
+                setLocale(Locale.ENGLISH).
+                setUsername(() -> "hdfs").
+                setIsRoot(() -> true).
+                setCwdAbsolut(() -> "/user/hdfs/data").
+                setCwdShort(() -> "~/data").
+                setCommandNum(() -> "42").
+                setHistoryNumber(() -> "42").
+                setFqdnSupplier(() -> "node1.example.com").
+                setInetAddressSupplier(() -> "node1").
+                build();
+    }
+}
@@ -0,0 +1,83 @@
+package org.mvnsearch.spring.boot.shell;
+
+import com.avast.server.hdfsshell.commands.CommandRegistry;
+import com.avast.server.hdfsshell.commands.ContextCommands;
+import com.avast.server.hdfsshell.commands.HadoopDfsCommands;
+import com.avast.server.hdfsshell.commands.MetadataCache;
+import com.avast.server.hdfsshell.commands.MetadataPrefetcher;
+import com.avast.server.hdfsshell.commands.UserGroupsCache;
+import com.avast.server.hdfsshell.commands.UserPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.shell.converters.StringConverter;
+import org.springframework.shell.core.SimpleParser;
+import org.springframework.shell.event.ParseResult;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-command overhead of the daemon - Spring Shell parser vs. {@link CommandDispatcher}, run by <code>gradlew jmh</code>.
+ * The command is <code>test -e</code> of an existing local directory (the default file system of the benchmark).
+ *
+ * @author Vitasek L.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandDispatchBenchmark {
+
+    private static final String COMMAND = "test -e " + System.getProperty("java.io.tmpdir");
+
+    private UserPool userPool;
+    private SimpleParser parser;
+    private CommandDispatcher dispatcher;
+
+    @Setup
+    public void setUp() {
+        userPool = new UserPool(UserPool.DEFAULT_MAX_USERS, UserPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        final ContextCommands contextCommands = new ContextCommands(new MetadataPrefetcher(1, 0), userPool,
+                MetadataCache.DEFAULT_TTL_MILLIS, MetadataCache.DEFAULT_MAX_WEIGHT, UserGroupsCache.DEFAULT_TTL_MILLIS);
+        final HadoopDfsCommands commands = new HadoopDfsCommands(contextCommands, new CommandRegistry());
+        parser = new SimpleParser();
+        parser.add(new StringConverter());
+        parser.add(commands);
+        dispatcher = new CommandDispatcher(Collections.singletonList(commands));
+    }
+
+    @TearDown
+    public void tearDown() {
+        userPool.shutdown();
+    }
+
+    @Benchmark
+    public ParseResult springShellParse() {
+        return parser.parse(COMMAND);
+    }
+
+    @Benchmark
+    public ParseResult dispatcherParse() {
+        return dispatcher.dispatch(COMMAND);
+    }
+
+    @Benchmark
+    public Object springShellTest() {
+        return invoke(parser.parse(COMMAND));
+    }
+
+    @Benchmark
+    public Object dispatcherTest() {
+        return invoke(dispatcher.dispatch(COMMAND));
+    }
+
+    private static Object invoke(ParseResult parseResult) {
+        return ReflectionUtils.invokeMethod(parseResult.getMethod(), parseResult.getInstance(), parseResult.getArguments());
+    }
+}
@@ -0,0 +1,53 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.shell.Command;
+import org.apache.hadoop.fs.shell.CommandFactory;
+import org.apache.hadoop.fs.shell.FsCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds a {@link CommandFactory} with all registered Hadoop FS shell commands.
+ * The registration is done only once per {@link Configuration}, every call to {@link #getInstance(String, Configuration)}
+ * returns a new {@link Command} instance, so the concurrent clients (daemon mode) don't share its <code>out</code>/<code>err</code> streams.
+ * The registration does not depend on the active user, the commands resolve the user when they are run, so all the sessions
+ * (and users switched by <code>su</code>) share it.
+ *
+ * @author Vitasek L.
+ */
+@Component
+public class CommandRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(CommandRegistry.class);
+
+    private volatile Registration registration;
+
+    public Command getInstance(String cmdName, Configuration conf) {
+        return getCommandFactory(conf).getInstance(cmdName, conf);
+    }
+
+    CommandFactory getCommandFactory(Configuration conf) {
+        Registration current = registration;
+        if (current == null || current.conf != conf) {
+            logger.debug("Registering HDFS commands");
+            current = new Registration(conf);
+            registration = current;
+        }
+        return current.commandFactory;
+    }
+
+    /**
+     * The factory is read-only after its registration, so it's safe to share it between threads.
+     */
+    private static class Registration {
+        private final Configuration conf;
+        private final CommandFactory commandFactory;
+
+        private Registration(Configuration conf) {
+            this.conf = conf;
+            this.commandFactory = new CommandFactory(conf);
+            FsCommand.registerCommands(commandFactory);
+        }
+    }
+}
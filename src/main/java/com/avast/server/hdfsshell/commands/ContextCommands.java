@@ -8,8 +8,11 @@ import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.NameNodeProxies;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.tools.GetUserMappingsProtocol;
+import org.mvnsearch.spring.boot.shell.ClientConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.shell.core.CommandMarker;
 import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
 import org.springframework.shell.core.annotation.CliCommand;
@@ -17,9 +20,9 @@ import org.springframework.shell.core.annotation.CliOption;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @SuppressWarnings("SameParameterValue")
@@ -27,35 +30,88 @@ import java.util.stream.Collectors;
 public class ContextCommands implements CommandMarker {
     private static final Logger logger = LoggerFactory.getLogger(ContextCommands.class);
 
-    private String currentDir;
-    private Configuration configuration;
-    private String homeDir;
+    private final ShellSession session;
+    private final MetadataPrefetcher prefetcher;
+    private final UserGroupsCache userGroupsCache;
+    private final UserPool userPool;
+    private volatile String currentUser;
 
     private boolean showResultCode = false;
     private boolean failOnError;
 
-    private GetUserMappingsProtocol userMappingsProtocol;
+    private volatile GetUserMappingsProtocol userMappingsProtocol;
 
-    @PostConstruct
-    public void init() {
-        try {
-            final HdfsConfiguration conf = new HdfsConfiguration();
-            userMappingsProtocol = NameNodeProxies.createProxy(conf, FileSystem.getDefaultUri(conf),
-                    GetUserMappingsProtocol.class).getProxy();
-        } catch (Exception e) {
-            logger.error("Failed to create proxy to get user groups", e);
+    @Autowired
+    public ContextCommands(MetadataPrefetcher prefetcher, UserPool userPool,
+                           @Value("${cache.ttl.ms:" + MetadataCache.DEFAULT_TTL_MILLIS + "}") long cacheTtlMillis,
+                           @Value("${cache.max.entries:" + MetadataCache.DEFAULT_MAX_WEIGHT + "}") long cacheMaxEntries,
+                           @Value("${groups.cache.ttl.ms:" + UserGroupsCache.DEFAULT_TTL_MILLIS + "}") long groupsCacheTtlMillis) {
+        this.prefetcher = prefetcher;
+        this.userPool = userPool;
+        this.userGroupsCache = new UserGroupsCache(this::loadGroupsForUser, groupsCacheTtlMillis);
+        this.session = new ShellSession(createConfiguration(), new MetadataCache(cacheTtlMillis, cacheMaxEntries));
+    }
+
+    private static Configuration createConfiguration() {
+        final Configuration conf = new Configuration();
+        if (conf.get("fs.hdfs.impl") == null) {
+            conf.setClass("fs.hdfs.impl", SessionFileSystem.class, FileSystem.class);
         }
+        return conf;
     }
 
-    public String[] getGroupsForUser(String username) {
-        if (userMappingsProtocol != null) {
+    /**
+     * Resolves the active user and loads the groups of the user in the background, so the first prompt does not wait for the NameNode.
+     * One-shot commands do not need it, the proxy is created on the first use.
+     */
+    public void warmUp() {
+        final Thread thread = new Thread(() -> {
             try {
-                return userMappingsProtocol.getGroupsForUser(username);
-            } catch (IOException e) {
-                return new String[0];
+                userGroupsCache.getGroupsIfPresent(whoami());
+            } catch (Exception e) {
+                logger.error("Failed to warm up user groups", e);
+            }
+        }, "hdfs-shell-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String[] getGroupsForUser(String username) {
+        return userGroupsCache.getGroups(username);
+    }
+
+    /**
+     * Does not block, for the prompt rendering.
+     *
+     * @return cached groups of the user or empty array if they are not loaded yet
+     */
+    public String[] getCachedGroupsForUser(String username) {
+        final String[] groups = userGroupsCache.getGroupsIfPresent(username);
+        return groups == null ? new String[0] : groups;
+    }
+
+    private String[] loadGroupsForUser(String username) throws IOException {
+        return getUserMappingsProtocol().getGroupsForUser(username);
+    }
+
+    private GetUserMappingsProtocol getUserMappingsProtocol() throws IOException {
+        GetUserMappingsProtocol protocol = userMappingsProtocol;
+        if (protocol == null) {
+            synchronized (userGroupsCache) {
+                protocol = userMappingsProtocol;
+                if (protocol == null) {
+                    final HdfsConfiguration conf = new HdfsConfiguration();
+                    try {
+                        protocol = NameNodeProxies.createProxy(conf, FileSystem.getDefaultUri(conf),
+                                GetUserMappingsProtocol.class).getProxy();
+                    } catch (RuntimeException e) {
+                        throw new IOException("Failed to create proxy to get user groups", e);
+                    }
+                    userMappingsProtocol = protocol;
+                }
             }
         }
-        return new String[0];
+        return protocol;
     }
 
     @CliAvailabilityIndicator({"pwd", "cd", "groups"})
@@ -96,6 +152,16 @@ public class ContextCommands implements CommandMarker {
     }
 
 
+    @CliCommand(value = "cache", help = "Shows statistics of the metadata cache used by path completion, cd and ls")
+    public String cache(@CliOption(key = {""}, help = "cache [clear]") String action) {
+        final MetadataCache metadataCache = getMetadataCache();
+        if ("clear".equals(action)) {
+            metadataCache.invalidateAll();
+            return "Metadata cache has been cleared";
+        }
+        return metadataCache.toString();
+    }
+
     @CliCommand(value = "pwd", help = "Shows current dir")
     public String pwd() {
         return getCurrentDir();
@@ -107,11 +173,17 @@ public class ContextCommands implements CommandMarker {
             newDir = getHomeDir();
         }
 
-        final Path path = (newDir.startsWith("/")) ? new Path(newDir) : new Path(getCurrentDir(), newDir);
+        final ShellSession currentSession = getSession();
+        final Path path = currentSession.resolve(newDir);
         try {
-            final FileSystem fs = getFileSystem();
-            if (fs.exists(path) && fs.isDirectory(path)) {
-                currentDir = path.toUri().getPath();
+            final FileSystem fs = currentSession.getFileSystem();
+            final FileStatus status = getMetadataCache().getFileStatus(fs, path);
+            if (status != null && status.isDirectory()) {
+                currentSession.setCurrentDir(path.toUri().getPath());
+                final MetadataPrefetcher.Scope prefetchScope = currentSession.getPrefetchScope();
+                if (prefetchScope != null) {
+                    prefetchScope.prefetch(getMetadataCache(), fs, status.getPath());
+                }
             } else {
                 return "-shell: cd: " + newDir + " No such file or directory";
             }
@@ -122,7 +194,7 @@ public class ContextCommands implements CommandMarker {
     }
 
     @CliCommand(value = "su", help = "Changes current active user [*experimental*]")
-    public synchronized String su(@CliOption(key = {""}, help = "su [<username>]") String newUser) throws IOException {
+    public String su(@CliOption(key = {""}, help = "su [<username>]") String newUser) throws IOException {
         if (StringUtils.isEmpty(newUser)) {
             return "No username is defined! ";
         }
@@ -140,54 +212,136 @@ public class ContextCommands implements CommandMarker {
                 return "User " + newUser + " does not exist!";
             }
         }
-        System.setProperty("HADOOP_USER_NAME", newUser);
-        UserGroupInformation.loginUserFromSubject(null);
-        currentDir = null;
+        final MetadataPrefetcher.Scope prefetchScope = getSession().getPrefetchScope();
+        if (prefetchScope != null) {
+            prefetchScope.cancel();
+        }
+        final String previousUser = whoami();
+        getSession().setUser(newUser.equals(getProcessUser()) ? null : userPool.acquire(newUser));
+        //groups of the user left by this session are refreshed, the entries of other sessions are kept
+        userGroupsCache.invalidate(previousUser);
         return "";
     }
 
     @CliCommand(value = "whoami", help = "Print effective username")
-    public synchronized String whoami() throws IOException {
-        return UserGroupInformation.getCurrentUser().getUserName();
+    public String whoami() throws IOException {
+        final UserGroupInformation user = getSession().getUser();
+        return user == null ? getProcessUser() : user.getUserName();
     }
 
-    public synchronized String getCurrentDir() {
-        if (currentDir == null) {
-            try {
-                final Path path = new Path(Path.CUR_DIR);
-                final FileSystem fs = getFileSystem();
-                final FileStatus[] fileStatuses = fs.globStatus(path);
-                if (fileStatuses == null || fileStatuses.length == 0) {
-                    return "";
-                }
-                homeDir = currentDir = fileStatuses[0].getPath().toUri().getPath();
-            } catch (Exception e) {
-                return "";
-            }
+    private String getProcessUser() throws IOException {
+        String user = currentUser;
+        if (user == null) {
+            user = UserGroupInformation.getCurrentUser().getUserName();
+            currentUser = user;
+        }
+        return user;
+    }
+
+    public String getCurrentDir() {
+        return getSession().getCurrentDir();
+    }
+
+    public String getHomeDir() {
+        return getSession().getHomeDir();
+    }
+
+    public Configuration getConfiguration() {
+        return session.getConfiguration();
+    }
+
+    public FileSystem getFileSystem() throws IOException {
+        return getSession().getFileSystem();
+    }
+
+    /**
+     * @return session of the current daemon connection or the session of the interactive shell
+     */
+    public ShellSession getSession() {
+        final Map<String, Object> attributes = ClientConnection.sessionContext.get();
+        if (attributes == null) {
+            return session;
+        }
+        final ShellSession connectionSession = (ShellSession) attributes.get(ShellSession.ATTRIBUTE);
+        if (connectionSession != null) {
+            return connectionSession;
         }
-        return currentDir;
+        return (ShellSession) attributes.computeIfAbsent(ShellSession.ATTRIBUTE,
+                key -> new ShellSession(session.getConfiguration(), session.getMetadataCache(), true));
     }
 
-    public synchronized String getHomeDir() {
-        if (homeDir == null) {
-            getCurrentDir();
+    /**
+     * @return metadata cache of the active user of the current session
+     */
+    public MetadataCache getMetadataCache() {
+        return getSession().getMetadataCache();
+    }
+
+    /**
+     * Stores a listing loaded by a command and starts prefetching of its subdirectories.
+     */
+    public void cacheListing(FileSystem fs, Path path, FileStatus[] listing) {
+        getMetadataCache().putListing(fs, path, listing);
+        final MetadataPrefetcher.Scope prefetchScope = getSession().getPrefetchScope();
+        if (prefetchScope != null) {
+            prefetchScope.prefetch(getMetadataCache(), fs, listing);
+        }
+    }
+
+    /**
+     * Turns on the background prefetching for the interactive shell. One-shot commands, scripts and daemon connections
+     * do not use the path completion, so they do not prefetch.
+     */
+    public void enablePrefetching() {
+        session.setPrefetchScope(prefetcher.newScope());
+    }
+
+    /**
+     * Runs a script in the current session without prefetching.
+     */
+    public void runScript(Runnable script) {
+        final MetadataPrefetcher.Scope prefetchScope = getSession().getPrefetchScope();
+        if (prefetchScope == null) {
+            script.run();
+            return;
         }
-        if (homeDir == null) {//in case of failure
-            return ".";
+        prefetchScope.suspend();
+        try {
+            script.run();
+        } finally {
+            prefetchScope.resume();
         }
-        return homeDir;
     }
 
-    public synchronized Configuration getConfiguration() {
-        if (configuration == null) {
-            configuration = new Configuration();
+    /**
+     * Removes the given paths (and their subtrees) from the metadata cache. Globs are handled too.
+     *
+     * @param paths HDFS paths modified by a command
+     */
+    public void invalidateMetadata(String... paths) {
+        final MetadataCache metadataCache = getMetadataCache();
+        try {
+            final FileSystem fs = getFileSystem();
+            for (String path : paths) {
+                if (path.isEmpty()) {
+                    continue;
+                }
+                final int glob = indexOfGlob(path);
+                final String literal = glob < 0 ? path : path.substring(0, path.lastIndexOf('/', glob) + 1);
+                metadataCache.invalidate(fs, getSession().resolve(literal.isEmpty() ? Path.CUR_DIR : literal));
+            }
+        } catch (Exception e) {
+            metadataCache.invalidateAll();
         }
-        return configuration;
     }
 
-    FileSystem getFileSystem() throws IOException {
-        final Configuration conf = getConfiguration();
-        return FileSystem.get(conf);
+    private static int indexOfGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if ("*?[{".indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public boolean isShowResultCode() {
@@ -202,18 +356,4 @@ public class ContextCommands implements CommandMarker {
         return failOnError;
     }
 
-
-    public void updateCurrentWorkingDirectory() {
-        final String currentDir = this.getCurrentDir();
-        if (StringUtils.isEmpty(currentDir)) {
-            return;
-        }
-        try {
-            FileSystem.get(new Configuration()).setWorkingDirectory(new Path(currentDir));
-        } catch (Exception e) {
-            //ignore
-            // e.printStackTrace();
-        }
-    }
-
 }
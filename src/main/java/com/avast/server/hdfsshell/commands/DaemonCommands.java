@@ -0,0 +1,43 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.mvnsearch.spring.boot.shell.UnixServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Commands for the daemon mode.
+ *
+ * @author Vitasek L.
+ */
+@Component
+public class DaemonCommands implements CommandMarker {
+
+    private final ApplicationContext applicationContext;
+
+    @Autowired
+    public DaemonCommands(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @CliAvailabilityIndicator({"daemon"})
+    public boolean isSimpleAvailable() {
+        //always available
+        return true;
+    }
+
+    @CliCommand(value = "daemon", help = "Shows statistics of connections to the daemon")
+    public String daemon() {
+        //the server is registered after the context is started
+        final Map<String, UnixServer> servers = applicationContext.getBeansOfType(UnixServer.class);
+        if (servers.isEmpty()) {
+            return "HDFS Shell is not running in daemon mode";
+        }
+        return servers.values().iterator().next().getStatistics();
+    }
+}
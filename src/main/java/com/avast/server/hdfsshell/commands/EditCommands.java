@@ -80,13 +80,7 @@ public class EditCommands implements CommandMarker {
     }
 
     private Path getFilePathForEdit(@CliOption(key = {""}, help = "File to edit") String path) {
-        Path p;
-        if (!path.startsWith("/")) {
-            p = new Path(contextCommands.getCurrentDir(), path);
-        } else {
-            p = new Path(path);
-        }
-        return p;
+        return contextCommands.getSession().resolve(path);
     }
 
     private File getLocalTempFile(String filename) {
@@ -1,10 +1,17 @@
 package com.avast.server.hdfsshell.commands;
 
+import com.avast.server.hdfsshell.engine.CatCommand;
+import com.avast.server.hdfsshell.engine.FindCommand;
+import com.avast.server.hdfsshell.engine.GetMergeCommand;
+import com.avast.server.hdfsshell.engine.ListCommand;
+import com.avast.server.hdfsshell.engine.NativeCommand;
+import com.avast.server.hdfsshell.engine.ParallelAttributeCommand;
+import com.avast.server.hdfsshell.engine.ParallelGetCommand;
+import com.avast.server.hdfsshell.engine.ParallelPutCommand;
+import com.avast.server.hdfsshell.engine.ParallelUsageCommand;
 import com.avast.server.hdfsshell.utils.BashUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.shell.Command;
-import org.apache.hadoop.fs.shell.CommandFactory;
-import org.apache.hadoop.fs.shell.FsCommand;
 import org.mvnsearch.spring.boot.shell.ClientConnection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.shell.core.CommandMarker;
@@ -15,8 +22,13 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.io.PrintStream;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @SuppressWarnings("SameParameterValue")
 @Component
@@ -25,12 +37,18 @@ public class HadoopDfsCommands implements CommandMarker {
 
     private final List<String> NO_PARAMS_COMMANDS = Arrays.asList("-ls", "-lsr");
 
+    private static final Set<String> MODIFYING_COMMANDS = new HashSet<>(Arrays.asList("-appendToFile", "-chgrp", "-chmod", "-chown",
+            "-copyFromLocal", "-cp", "-createSnapshot", "-deleteSnapshot", "-expunge", "-mkdir", "-moveFromLocal", "-mv", "-put",
+            "-renameSnapshot", "-rm", "-rmdir", "-rmr", "-setfacl", "-setfattr", "-setrep", "-touchz"));
+
 
     final ContextCommands contextCommands;
+    private final CommandRegistry commandRegistry;
 
     @Autowired
-    public HadoopDfsCommands(ContextCommands contextCommands) {
+    public HadoopDfsCommands(ContextCommands contextCommands, CommandRegistry commandRegistry) {
         this.contextCommands = contextCommands;
+        this.commandRegistry = commandRegistry;
     }
 
 
@@ -52,15 +70,19 @@ public class HadoopDfsCommands implements CommandMarker {
     public String cat(
             @CliOption(key = {""}, help = "Fetch all files that match the file pattern <src> and display their content on stdout.") String path
     ) {
-        return runCommand("cat", path);
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!CatCommand.isSupported(arguments)) {
+            return runCommand("cat", arguments);
+        }
+        return runNativeCommand(new CatCommand(contextCommands.getConfiguration(), getOut(), getErr()), arguments);
     }
 
 
-    @CliCommand(value = {"find", "hdfs dfs -find"}, help = "Finds all files that match the specified expression and applies selected actions to them.\n\tIf no path is specified then defaults to the current working directory. If no expression is specified then defaults to -print.")
+    @CliCommand(value = {"find", "hdfs dfs -find"}, help = "Finds all files that match the specified expression and applies selected actions to them.\n\tIf no path is specified then defaults to the current working directory. If no expression is specified then defaults to -print.\n\tExpression: -name, -iname, -type, -size, -mtime, -mmin, -user, -group, -mindepth, -maxdepth, -prune, -limit, -print, -print0, -a. Use -P <threads> to set parallelism.")
     public String find(
-            @CliOption(key = {""}, help = "Finds all files that match the specified expression and applies selected actions to them.\n\tIf no path is specified then defaults to the current working directory. If no expression is specified then defaults to -print.") String path
+            @CliOption(key = {""}, help = "Finds all files that match the specified expression and applies selected actions to them.\n\tIf no path is specified then defaults to the current working directory. If no expression is specified then defaults to -print.\n\tExpression: -name, -iname, -type, -size, -mtime, -mmin, -user, -group, -mindepth, -maxdepth, -prune, -limit, -print, -print0, -a. Use -P <threads> to set parallelism.") String path
     ) {
-        return runCommand("find", path);
+        return runNativeCommand(new FindCommand(contextCommands.getConfiguration(), getOut(), getErr()), BashUtils.parseArguments(path));
     }
 
 
@@ -72,27 +94,27 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"chgrp", "hdfs dfs -chgrp"}, help = "This is equivalent to -chown .")
+    @CliCommand(value = {"chgrp", "hdfs dfs -chgrp"}, help = "This is equivalent to -chown . Use -P <threads> to change the group (recursively with -R) in parallel.")
     public String chgrp(
-            @CliOption(key = {""}, help = "This is equivalent to -chown .") String path
+            @CliOption(key = {""}, help = "This is equivalent to -chown . Use -P <threads> to change the group (recursively with -R) in parallel.") String path
     ) {
-        return runCommand("chgrp", path);
+        return runAttributeCommand(ParallelAttributeCommand.Mode.CHGRP, path);
     }
 
 
-    @CliCommand(value = {"chmod", "hdfs dfs -chmod"}, help = "Changes permissions of a file.")
+    @CliCommand(value = {"chmod", "hdfs dfs -chmod"}, help = "Changes permissions of a file. Use -P <threads> to change the permissions (recursively with -R) in parallel.")
     public String chmod(
-            @CliOption(key = {""}, help = "Changes permissions of a file.") String path
+            @CliOption(key = {""}, help = "Changes permissions of a file. Use -P <threads> to change the permissions (recursively with -R) in parallel.") String path
     ) {
-        return runCommand("chmod", path);
+        return runAttributeCommand(ParallelAttributeCommand.Mode.CHMOD, path);
     }
 
 
-    @CliCommand(value = {"chown", "hdfs dfs -chown"}, help = "Changes owner and group of a file.")
+    @CliCommand(value = {"chown", "hdfs dfs -chown"}, help = "Changes owner and group of a file. Use -P <threads> to change the ownership (recursively with -R) in parallel.")
     public String chown(
-            @CliOption(key = {""}, help = "Changes owner and group of a file.") String path
+            @CliOption(key = {""}, help = "Changes owner and group of a file. Use -P <threads> to change the ownership (recursively with -R) in parallel.") String path
     ) {
-        return runCommand("chown", path);
+        return runAttributeCommand(ParallelAttributeCommand.Mode.CHOWN, path);
     }
 
 
@@ -100,7 +122,7 @@ public class HadoopDfsCommands implements CommandMarker {
     public String copyFromLocal(
             @CliOption(key = {""}, help = "Identical to the -put command.") String path
     ) {
-        return runCommand("copyFromLocal", path);
+        return runPutCommand("copyFromLocal", path);
     }
 
 
@@ -108,15 +130,15 @@ public class HadoopDfsCommands implements CommandMarker {
     public String copyToLocal(
             @CliOption(key = {""}, help = "Identical to the -get command.") String path
     ) {
-        return runCommand("copyToLocal", path);
+        return runGetCommand("copyToLocal", path);
     }
 
 
-    @CliCommand(value = {"count", "hdfs dfs -count"}, help = "Count the number of directories, files and bytes under the paths that match the specified file pattern.")
+    @CliCommand(value = {"count", "hdfs dfs -count"}, help = "Count the number of directories, files and bytes under the paths that match the specified file pattern. Use -P <threads> to walk the tree in parallel.")
     public String count(
-            @CliOption(key = {""}, help = "Count the number of directories, files and bytes under the paths that match the specified file pattern.") String path
+            @CliOption(key = {""}, help = "Count the number of directories, files and bytes under the paths that match the specified file pattern. Use -P <threads> to walk the tree in parallel.") String path
     ) {
-        return runCommand("count", path);
+        return runUsageCommand(ParallelUsageCommand.Mode.COUNT, path);
     }
 
 
@@ -152,11 +174,11 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"du", "hdfs dfs -du"}, help = "Show the amount of space, in bytes, used by the files that match the specified file pattern.")
+    @CliCommand(value = {"du", "hdfs dfs -du"}, help = "Show the amount of space, in bytes, used by the files that match the specified file pattern. Use -P <threads> to walk the tree in parallel.")
     public String du(
-            @CliOption(key = {""}, help = "Show the amount of space, in bytes, used by the files that match the specified file pattern.") String path
+            @CliOption(key = {""}, help = "Show the amount of space, in bytes, used by the files that match the specified file pattern. Use -P <threads> to walk the tree in parallel.") String path
     ) {
-        return runCommand("du", path);
+        return runUsageCommand(ParallelUsageCommand.Mode.DU, path);
     }
 
 
@@ -164,7 +186,7 @@ public class HadoopDfsCommands implements CommandMarker {
     public String dus(
             @CliOption(key = {""}, help = "(DEPRECATED) Same as 'du -s'.") String path
     ) {
-        return runCommand("dus", path);
+        return runUsageCommand(ParallelUsageCommand.Mode.DUS, path);
     }
 
 
@@ -176,11 +198,11 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"get", "hdfs dfs -get"}, help = "Copy files that match the file pattern <src> to the local name.")
+    @CliCommand(value = {"get", "hdfs dfs -get"}, help = "Copy files that match the file pattern <src> to the local name. Use -t <threads> to download files (and ranges of large files) in parallel.")
     public String get(
-            @CliOption(key = {""}, help = "Copy files that match the file pattern <src> to the local name.") String path
+            @CliOption(key = {""}, help = "Copy files that match the file pattern <src> to the local name. Use -t <threads> to download files (and ranges of large files) in parallel.") String path
     ) {
-        return runCommand("get", path);
+        return runGetCommand("get", path);
     }
 
 
@@ -200,22 +222,26 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"getmerge", "hdfs dfs -getmerge"}, help = "Get all the files in the directories that match the source file pattern and merge and sort them to only one file on local fs.")
+    @CliCommand(value = {"getmerge", "hdfs dfs -getmerge"}, help = "Get all the files in the directories that match the source file pattern and merge them to only one file on local fs. Use -t <parts> [-m <megabytes>] to read ahead part files in parallel, -sort [-d <delimiter> -k <field>] to merge sorted files into one sorted file.")
     public String getmerge(
-            @CliOption(key = {""}, help = "Get all the files in the directories that match the source file pattern and merge and sort them to only one file on local fs.") String path
+            @CliOption(key = {""}, help = "Get all the files in the directories that match the source file pattern and merge them to only one file on local fs. Use -t <parts> [-m <megabytes>] to read ahead part files in parallel, -sort [-d <delimiter> -k <field>] to merge sorted files into one sorted file.") String path
     ) {
-        return runCommand("getmerge", path);
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!NativeCommand.hasOption(arguments, NativeCommand.TRANSFER_THREADS_OPTION) && !NativeCommand.hasOption(arguments, GetMergeCommand.SORT_OPTION)) {
+            return runCommand("getmerge", arguments);
+        }
+        return runNativeCommand(new GetMergeCommand(contextCommands.getConfiguration(), getOut(), getErr()), arguments);
     }
 
 
-    @CliCommand(value = {"ls", "hdfs dfs -ls"}, help = "List the contents that match the specified file pattern.")
+    @CliCommand(value = {"ls", "hdfs dfs -ls"}, help = "List the contents that match the specified file pattern. Use -limit <n> [-page <p>] to print only a page of entries, -R and -limit stream the listing.")
     public String ls(
-            @CliOption(key = {""}, help = "List the contents that match the specified file pattern.", specifiedDefaultValue = "", unspecifiedDefaultValue = "") String path
+            @CliOption(key = {""}, help = "List the contents that match the specified file pattern. Use -limit <n> [-page <p>] to print only a page of entries, -R and -limit stream the listing.", specifiedDefaultValue = "", unspecifiedDefaultValue = "") String path
     ) {
         if (StringUtils.isEmpty(path)) {
             path = null;
         }
-        return runCommand("ls", path);
+        return runListCommand(path);
     }
 
     @CliCommand(value = {"ll"}, help = "List the contents that match the specified file pattern.")
@@ -230,10 +256,8 @@ public class HadoopDfsCommands implements CommandMarker {
     public String lsr(
             @CliOption(key = {""}, help = "(DEPRECATED) Same as 'ls -R'.") String path
     ) {
-        if (StringUtils.isEmpty(path)) {
-            path = null;
-        }
-        return runCommand("lsr", path);
+        getErr().println("lsr: DEPRECATED: Please use 'ls -R' instead.");
+        return runListCommand(StringUtils.isEmpty(path) ? "-R" : "-R " + path);
     }
 
 
@@ -269,11 +293,11 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"put", "hdfs dfs -put"}, help = "Copy files from the local file system into fs.")
+    @CliCommand(value = {"put", "hdfs dfs -put"}, help = "Copy files from the local file system into fs. Use -t <threads> to upload files (and parts of large files) in parallel.")
     public String put(
-            @CliOption(key = {""}, help = "Copy files from the local file system into fs.") String path
+            @CliOption(key = {""}, help = "Copy files from the local file system into fs. Use -t <threads> to upload files (and parts of large files) in parallel.") String path
     ) {
-        return runCommand("put", path);
+        return runPutCommand("put", path);
     }
 
 
@@ -326,11 +350,11 @@ public class HadoopDfsCommands implements CommandMarker {
     }
 
 
-    @CliCommand(value = {"setrep", "hdfs dfs -setrep"}, help = "Set the replication level of a file.")
+    @CliCommand(value = {"setrep", "hdfs dfs -setrep"}, help = "Set the replication level of a file. Use -P <threads> to set the replication and wait for it (-w) in parallel.")
     public String setrep(
-            @CliOption(key = {""}, help = "Set the replication level of a file.") String path
+            @CliOption(key = {""}, help = "Set the replication level of a file. Use -P <threads> to set the replication and wait for it (-w) in parallel.") String path
     ) {
-        return runCommand("setrep", path);
+        return runAttributeCommand(ParallelAttributeCommand.Mode.SETREP, path);
     }
 
 
@@ -412,16 +436,66 @@ public class HadoopDfsCommands implements CommandMarker {
         return pathArguments;
     }
 
+    private String runUsageCommand(ParallelUsageCommand.Mode mode, String path) {
+        final String cmdName = mode.name().toLowerCase();
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!NativeCommand.hasOption(arguments, NativeCommand.THREADS_OPTION)) {
+            return runCommand(cmdName, arguments);
+        }
+        return runNativeCommand(new ParallelUsageCommand(mode, contextCommands.getConfiguration(), getOut(), getErr()), arguments);
+    }
+
+    private String runAttributeCommand(ParallelAttributeCommand.Mode mode, String path) {
+        final String cmdName = mode.name().toLowerCase();
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!NativeCommand.hasOption(arguments, NativeCommand.THREADS_OPTION)) {
+            return runCommand(cmdName, arguments);
+        }
+        return runNativeCommand(new ParallelAttributeCommand(mode, contextCommands.getConfiguration(), getOut(), getErr()), arguments);
+    }
+
+    private String runPutCommand(String cmdName, String path) {
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!NativeCommand.hasOption(arguments, NativeCommand.TRANSFER_THREADS_OPTION)) {
+            return runCommand(cmdName, arguments);
+        }
+        return runNativeCommand(new ParallelPutCommand(cmdName, contextCommands.getConfiguration(), getOut(), getErr()), arguments);
+    }
+
+    private String runGetCommand(String cmdName, String path) {
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!NativeCommand.hasOption(arguments, NativeCommand.TRANSFER_THREADS_OPTION)) {
+            return runCommand(cmdName, arguments);
+        }
+        return runNativeCommand(new ParallelGetCommand(cmdName, contextCommands.getConfiguration(), getOut(), getErr()), arguments);
+    }
+
+    private String runListCommand(String path) {
+        final String[] arguments = BashUtils.parseArguments(path);
+        if (!ListCommand.isSupported(arguments)) {
+            return runCommand("ls", arguments);
+        }
+        return runNativeCommand(new ListCommand(contextCommands.getConfiguration(), getOut(), getErr(),
+                (item, listing) -> contextCommands.cacheListing(item.fs, item.path, listing)), arguments);
+    }
+
     String runCommand(String cmdName, String path) {
         return runCommand(cmdName, BashUtils.parseArguments(path));
     }
 
+    String runNativeCommand(NativeCommand command, String[] arguments) {
+        final String[] args = replaceHdfsPath(arguments);
+        final int result = contextCommands.getSession().doAs((PrivilegedAction<Integer>) () -> command.run(args));
+        invalidateMetadata("-" + command.getName(), args);
+        return handleResult(result, getOut(), getErr());
+    }
+
 
     String runCommand(String cmdName, String[] arguments) {
         final Configuration conf = contextCommands.getConfiguration();
 
         cmdName = "-" + cmdName;
-        final Command command = getCommandInstance(cmdName, conf);
+        final Command command = commandRegistry.getInstance(cmdName, conf);
         if (command == null) {
             return "Unknown command " + cmdName;
         }
@@ -430,41 +504,106 @@ public class HadoopDfsCommands implements CommandMarker {
             return command.getDescription();
         }
 
-
-        contextCommands.updateCurrentWorkingDirectory();
-
         arguments = replaceHdfsPath(arguments);
-        final PrintStream printStream = ClientConnection.context.get();
-        if (printStream != null) {
-            command.err = printStream;
-            command.out = printStream;
+        if (ClientConnection.context.get() != null) {
+            command.err = getErr();
+            command.out = getOut();
         }
 //        final ByteArrayOutputStream out = new ByteArrayOutputStream();
 //        final PrintStream printStream = new PrintStream(out);
 //        command.err = printStream;
 //        command.out = printStream;
 
-        final int result = command.run(arguments);
+        final String[] args = arguments;
+        final int result = contextCommands.getSession().doAs((PrivilegedAction<Integer>) () -> command.run(args));
+        invalidateMetadata(cmdName, arguments);
+
+        //printStream.close();
+        return handleResult(result, command.out, command.err);
+    }
+
+    private void invalidateMetadata(String cmdName, String[] arguments) {
+        if (MODIFYING_COMMANDS.contains(cmdName)) {
+            final List<String> paths = modifiedPaths(cmdName, arguments);
+            contextCommands.invalidateMetadata(paths.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Only the arguments which are HDFS paths changed by the command - not the local sources of <code>put</code>,
+     * the modes of <code>chmod</code>, the owners of <code>chown</code> etc.
+     *
+     * @param cmdName name of a modifying command including the leading dash
+     * @return paths to invalidate in the metadata cache
+     */
+    static List<String> modifiedPaths(String cmdName, String[] arguments) {
+        final List<String> operands = new ArrayList<>(arguments.length);
+        for (int i = 0; i < arguments.length; i++) {
+            final String argument = arguments[i];
+            if (NativeCommand.THREADS_OPTION.equals(argument) || NativeCommand.TRANSFER_THREADS_OPTION.equals(argument)) {
+                i++;//skip the value of the option
+            } else if (!argument.isEmpty() && !argument.startsWith("-")) {
+                operands.add(argument);
+            }
+        }
+        if (operands.isEmpty()) {
+            return operands;
+        }
+        switch (cmdName) {
+            case "-appendToFile":
+            case "-copyFromLocal":
+            case "-cp":
+            case "-moveFromLocal":
+            case "-put":
+            case "-setfacl":
+            case "-setfattr":
+                //sources are local files or are not changed, options like -m <acl_spec> or -n <name> precede the path
+                return Collections.singletonList(operands.get(operands.size() - 1));
+            case "-chgrp":
+            case "-chmod":
+            case "-chown":
+            case "-setrep":
+                //the mode, owner, group or replication precedes the paths
+                return operands.subList(1, operands.size());
+            case "-createSnapshot":
+            case "-deleteSnapshot":
+            case "-renameSnapshot":
+                //snapshot names follow the snapshottable directory
+                return Collections.singletonList(operands.get(0));
+            default:
+                //mv changes its sources too, the others take paths only
+                return operands;
+        }
+    }
+
+    private String handleResult(int result, PrintStream out, PrintStream err) {
+        ClientConnection.setResultCode(result);
         if (contextCommands.isShowResultCode()) {
             if (result == 0) {
-                command.out.println("Exit code = " + result);
+                out.println("Exit code = " + result);
             } else {
-                command.err.println("Exit code = " + result);
+                err.println("Exit code = " + result);
             }
         }
 
-        //printStream.close();
         if (result != 0 && contextCommands.isFailOnError()) {
             throw new RuntimeException("HDFS Command finished with result code " + result);
         }
         return "";
     }
 
-    private static Command getCommandInstance(String cmdName, Configuration conf) {
-        final CommandFactory commandFactory = new CommandFactory(conf);
-        FsCommand.registerCommands(commandFactory);
-        return commandFactory.getInstance(cmdName, conf);
+    private static PrintStream getOut() {
+        final PrintStream printStream = ClientConnection.context.get();
+        return printStream != null ? printStream : System.out;
     }
 
+    private static PrintStream getErr() {
+        final PrintStream errStream = ClientConnection.errContext.get();
+        if (errStream != null) {
+            return errStream;
+        }
+        final PrintStream printStream = ClientConnection.context.get();
+        return printStream != null ? printStream : System.err;
+    }
 
 }
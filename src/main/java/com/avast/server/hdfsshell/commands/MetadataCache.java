@@ -0,0 +1,326 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of {@link FileStatus}es and directory listings with TTL expiry, shared by path completion, <code>cd</code> and <code>ls</code>.
+ * The size of the cache is counted in statuses (a listing weighs as many statuses as it contains), least recently used entries are evicted first.
+ * Non existing paths are cached too. Paths modified by the shell itself have to be {@link #invalidate(FileSystem, Path) invalidated}.
+ * <p>
+ * Entries are cached per user - metadata loaded by one user are never returned to another one, see {@link #forUser(String)}.
+ * All users share the storage and its limit, the invalidation of a path removes the entries of all users.
+ *
+ * @author Vitasek L.
+ */
+public class MetadataCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 5000;
+    public static final long DEFAULT_MAX_WEIGHT = 100_000;
+
+    private final Store store;
+    private final String user;
+
+    public MetadataCache(long ttlMillis, long maxWeight) {
+        this(new Store(ttlMillis, maxWeight), "");
+    }
+
+    private MetadataCache(Store store, String user) {
+        this.store = store;
+        this.user = user;
+    }
+
+    /**
+     * @return view of the cache with the entries of the given user, sharing the storage with this cache
+     */
+    public MetadataCache forUser(String user) {
+        return store.views.computeIfAbsent(user, key -> new MetadataCache(store, key));
+    }
+
+    /**
+     * @return status of the path or null if the path does not exist
+     */
+    public FileStatus getFileStatus(FileSystem fs, Path path) throws IOException {
+        final Path qualified = fs.makeQualified(path);
+        final Entry cached = get(new Key(user, qualified, false));
+        if (cached != null) {
+            store.hits.incrementAndGet();
+            return cached.status;
+        }
+        final FileStatus fromParent = findInParentListing(qualified);
+        if (fromParent != null) {
+            store.hits.incrementAndGet();
+            return fromParent;
+        }
+        store.misses.incrementAndGet();
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(qualified);
+        } catch (FileNotFoundException e) {
+            status = null;
+        }
+        put(new Key(user, qualified, false), new Entry(status, null, expiration()));
+        return status;
+    }
+
+    public FileStatus[] listStatus(FileSystem fs, Path path) throws IOException {
+        final Path qualified = fs.makeQualified(path);
+        final Entry cached = get(new Key(user, qualified, true));
+        if (cached != null) {
+            store.hits.incrementAndGet();
+            return cached.listing.clone();
+        }
+        store.misses.incrementAndGet();
+        final FileStatus[] listing = fs.listStatus(qualified);
+        putListing(qualified, listing);
+        return listing;
+    }
+
+    /**
+     * Stores a fresh listing loaded by somebody else (eg. <code>ls</code>).
+     */
+    public void putListing(FileSystem fs, Path path, FileStatus[] listing) {
+        putListing(fs.makeQualified(path), listing);
+    }
+
+    private void putListing(Path qualified, FileStatus[] listing) {
+        put(new Key(user, qualified, true), new Entry(null, listing.clone(), expiration()));
+    }
+
+    /**
+     * Removes the path, its whole subtree and the listing of its parent, for all users.
+     */
+    public void invalidate(FileSystem fs, Path path) {
+        final Path qualified = fs.makeQualified(path);
+        final String pathString = qualified.toString();
+        final String subtreePrefix = pathString.endsWith(Path.SEPARATOR) ? pathString : pathString + Path.SEPARATOR;
+        final Path parent = qualified.getParent();
+        synchronized (store) {
+            final List<Key> removed = new ArrayList<>();
+            addKeys(removed, store.index.get(pathString), false);
+            //all paths starting with the prefix, the character after the separator is at most Character.MAX_VALUE
+            for (Set<Key> keys : store.index.subMap(subtreePrefix, subtreePrefix + Character.MAX_VALUE).values()) {
+                addKeys(removed, keys, false);
+            }
+            if (parent != null) {
+                addKeys(removed, store.index.get(parent.toString()), true);
+            }
+            for (Key key : removed) {
+                store.remove(key);
+            }
+        }
+    }
+
+    private static void addKeys(List<Key> target, Set<Key> keys, boolean listingsOnly) {
+        if (keys != null) {
+            for (Key key : keys) {
+                if (!listingsOnly || key.listing) {
+                    target.add(key);
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (store) {
+            store.entries.clear();
+            store.index.clear();
+            store.weight = 0;
+        }
+    }
+
+    public long getHits() {
+        return store.hits.get();
+    }
+
+    public long getMisses() {
+        return store.misses.get();
+    }
+
+    public long getEvictions() {
+        return store.evictions.get();
+    }
+
+    public int size() {
+        synchronized (store) {
+            return store.entries.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (store) {
+            return store.weight;
+        }
+    }
+
+    private FileStatus findInParentListing(Path qualified) {
+        final Path parent = qualified.getParent();
+        if (parent == null) {
+            return null;
+        }
+        final Entry parentListing = get(new Key(user, parent, true));
+        if (parentListing == null) {
+            return null;
+        }
+        for (FileStatus status : parentListing.listing) {
+            if (qualified.equals(status.getPath())) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    private Entry get(Key key) {
+        synchronized (store) {
+            final Entry entry = store.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                store.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void put(Key key, Entry entry) {
+        synchronized (store) {
+            store.put(key, entry);
+        }
+    }
+
+    private long expiration() {
+        return System.currentTimeMillis() + store.ttlMillis;
+    }
+
+    @Override
+    public String toString() {
+        final long hitCount = getHits();
+        final long missCount = getMisses();
+        final long total = hitCount + missCount;
+        return String.format("entries=%d weight=%d/%d hits=%d misses=%d hitRatio=%.2f evictions=%d ttl=%dms",
+                size(), getWeight(), store.maxWeight, hitCount, missCount, total == 0 ? 0.0 : (double) hitCount / total, getEvictions(), store.ttlMillis);
+    }
+
+    /**
+     * Entries of all users in LRU order, indexed by the path string for the invalidation of subtrees.
+     * Guarded by its own monitor.
+     */
+    private static final class Store {
+        private final long ttlMillis;
+        private final long maxWeight;
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final TreeMap<String, Set<Key>> index = new TreeMap<>();
+        private final ConcurrentMap<String, MetadataCache> views = new ConcurrentHashMap<>();
+        private long weight;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        private Store(long ttlMillis, long maxWeight) {
+            this.ttlMillis = ttlMillis;
+            this.maxWeight = maxWeight;
+        }
+
+        private void put(Key key, Entry entry) {
+            if (entry.weight() > maxWeight) {
+                return;
+            }
+            final Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight();
+            } else {
+                index.computeIfAbsent(key.pathString, path -> new HashSet<>(2)).add(key);
+            }
+            weight += entry.weight();
+            final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                final Map.Entry<Key, Entry> eldest = iterator.next();
+                weight -= eldest.getValue().weight();
+                iterator.remove();
+                unindex(eldest.getKey());
+                evictions.incrementAndGet();
+            }
+        }
+
+        private void remove(Key key) {
+            final Entry entry = entries.remove(key);
+            if (entry != null) {
+                weight -= entry.weight();
+                unindex(key);
+            }
+        }
+
+        private void unindex(Key key) {
+            final Set<Key> keys = index.get(key.pathString);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                index.remove(key.pathString);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String user;
+        private final Path path;
+        private final String pathString;
+        private final boolean listing;
+
+        private Key(String user, Path path, boolean listing) {
+            this.user = user;
+            this.path = path;
+            this.pathString = path.toString();
+            this.listing = listing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return listing == key.listing && path.equals(key.path) && user.equals(key.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, path, listing);
+        }
+    }
+
+    private static final class Entry {
+        private final FileStatus status;
+        private final FileStatus[] listing;
+        private final long expiresAt;
+
+        private Entry(FileStatus status, FileStatus[] listing, long expiresAt) {
+            this.status = status;
+            this.listing = listing;
+            this.expiresAt = expiresAt;
+        }
+
+        private long weight() {
+            return listing == null ? 1 : listing.length + 1;
+        }
+    }
+}
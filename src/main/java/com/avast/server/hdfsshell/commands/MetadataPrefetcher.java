@@ -0,0 +1,172 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads directory listings into the {@link MetadataCache} in the background, so the path completion after <code>cd</code>
+ * or <code>ls</code> is served from memory.
+ * Prefetching is requested through a {@link Scope} of the session, only the latest request of the scope is served - its older tasks
+ * are skipped as soon as the user moves on. Tasks of other scopes are not affected.
+ * Running NameNode calls are never interrupted (it would close the RPC connection shared with the shell).
+ *
+ * @author Vitasek L.
+ */
+@Component
+public class MetadataPrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataPrefetcher.class);
+
+    private final int maxDirectories;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public MetadataPrefetcher(@Value("${prefetch.threads:2}") int threads, @Value("${prefetch.max.dirs:32}") int maxDirectories) {
+        this.maxDirectories = maxDirectories;
+        final AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxDirectories) + 1), runnable -> {
+            final Thread thread = new Thread(runnable, "hdfs-shell-prefetch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return new scope for the prefetches of one session
+     */
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    private boolean isEnabled() {
+        return maxDirectories > 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Prefetches of one session. A new request cancels the pending prefetches of the same scope only.
+     */
+    public class Scope {
+        private final AtomicLong generation = new AtomicLong();
+        private final AtomicInteger suspended = new AtomicInteger();
+
+        private Scope() {
+        }
+
+        /**
+         * Prefetches the directory and its subdirectories. Cancels all pending prefetches of the scope.
+         */
+        public void prefetch(MetadataCache cache, FileSystem fs, Path dir) {
+            if (!isActive()) {
+                return;
+            }
+            final long current = cancel();
+            execute(() -> {
+                final FileStatus[] listing = list(current, cache, fs, dir);
+                if (listing != null) {
+                    prefetchSubdirectories(current, cache, fs, listing);
+                }
+            });
+        }
+
+        /**
+         * Prefetches subdirectories of an already loaded listing. Cancels all pending prefetches of the scope.
+         */
+        public void prefetch(MetadataCache cache, FileSystem fs, FileStatus[] listing) {
+            if (isActive()) {
+                prefetchSubdirectories(cancel(), cache, fs, listing);
+            }
+        }
+
+        /**
+         * Skips all pending prefetches of the scope.
+         *
+         * @return generation of the next prefetch
+         */
+        public long cancel() {
+            final long next = generation.incrementAndGet();
+            executor.getQueue().removeIf(task -> ((Task) task).scope == this);
+            return next;
+        }
+
+        /**
+         * Stops prefetching until {@link #resume()} is called, eg. while a script is running. Pending prefetches are skipped.
+         */
+        public void suspend() {
+            suspended.incrementAndGet();
+            cancel();
+        }
+
+        public void resume() {
+            suspended.decrementAndGet();
+        }
+
+        private boolean isActive() {
+            return isEnabled() && suspended.get() == 0;
+        }
+
+        private void execute(Runnable action) {
+            executor.execute(new Task(this, action));
+        }
+
+        private void prefetchSubdirectories(long current, MetadataCache cache, FileSystem fs, FileStatus[] listing) {
+            int count = 0;
+            for (FileStatus status : listing) {
+                if (count >= maxDirectories || generation.get() != current) {
+                    return;
+                }
+                if (status.isDirectory()) {
+                    count++;
+                    final Path path = status.getPath();
+                    execute(() -> list(current, cache, fs, path));
+                }
+            }
+        }
+
+        private FileStatus[] list(long current, MetadataCache cache, FileSystem fs, Path dir) {
+            if (generation.get() != current) {
+                return null;
+            }
+            try {
+                return cache.listStatus(fs, dir);
+            } catch (IOException e) {
+                logger.debug("Failed to prefetch listing of {}", dir, e);
+                return null;
+            }
+        }
+    }
+
+    private static class Task implements Runnable {
+        private final Scope scope;
+        private final Runnable action;
+
+        private Task(Scope scope, Runnable action) {
+            this.scope = scope;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            action.run();
+        }
+    }
+}
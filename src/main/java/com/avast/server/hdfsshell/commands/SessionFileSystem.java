@@ -0,0 +1,22 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+
+/**
+ * HDFS file system shared by all sessions of the daemon. Relative paths are resolved against the current directory
+ * of the session bound to the calling thread, so the sessions do not overwrite the working directory of each other.
+ * Without a bound session (the interactive shell) it behaves as {@link DistributedFileSystem}.
+ *
+ * @author Vitasek L.
+ */
+public class SessionFileSystem extends DistributedFileSystem {
+
+    @Override
+    public Path getWorkingDirectory() {
+        final ShellSession session = ShellSession.current();
+        final Path dir = session == null ? null : session.getWorkingDirectory();
+        final Path defaultDir = super.getWorkingDirectory();
+        return dir == null ? defaultDir : dir.makeQualified(getUri(), defaultDir);
+    }
+}
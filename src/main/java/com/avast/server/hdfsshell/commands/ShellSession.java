@@ -0,0 +1,231 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.mvnsearch.spring.boot.shell.ClientConnection;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedExceptionAction;
+import java.util.Map;
+
+/**
+ * State of one shell session - the resolved {@link Configuration}, the {@link FileSystem} handle and the current working directory.
+ * The configuration and the file system are resolved only once, not for every command.
+ * <p>
+ * Every connection of the daemon has its own detached session stored in the connection context. A detached session
+ * does not change the working directory of the shared file system, {@link SessionFileSystem} resolves relative paths
+ * against the current directory of the session instead.
+ * <p>
+ * After <code>su</code> the session holds a lease of the pooled UGI of the user and runs commands by its {@link UserGroupInformation#doAs}.
+ *
+ * @author Vitasek L.
+ */
+public class ShellSession implements Closeable {
+
+    static final String ATTRIBUTE = ShellSession.class.getName();
+
+    private final Configuration configuration;
+    private final MetadataCache metadataCache;
+    private final boolean detached;
+
+    private volatile FileSystem fileSystem;
+    private volatile String currentDir;
+    private volatile String homeDir;
+    private volatile Path workingDirectory;
+    private volatile UserPool.Lease userLease;
+    private volatile MetadataPrefetcher.Scope prefetchScope;
+
+    public ShellSession(Configuration configuration) {
+        this(configuration, new MetadataCache(MetadataCache.DEFAULT_TTL_MILLIS, MetadataCache.DEFAULT_MAX_WEIGHT));
+    }
+
+    public ShellSession(Configuration configuration, MetadataCache metadataCache) {
+        this(configuration, metadataCache, false);
+    }
+
+    public ShellSession(Configuration configuration, MetadataCache metadataCache, boolean detached) {
+        this.configuration = configuration;
+        this.metadataCache = metadataCache;
+        this.detached = detached;
+    }
+
+    /**
+     * @return session of the daemon connection served by the current thread or null
+     */
+    public static ShellSession current() {
+        final Map<String, Object> attributes = ClientConnection.sessionContext.get();
+        return attributes == null ? null : (ShellSession) attributes.get(ATTRIBUTE);
+    }
+
+    /**
+     * @return current directory set by {@link #setCurrentDir(String)} in a detached session, otherwise null
+     */
+    Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return metadata cache of the active user of the session
+     */
+    public MetadataCache getMetadataCache() {
+        final UserGroupInformation user = getUser();
+        return metadataCache.forUser(user == null ? "" : user.getShortUserName());
+    }
+
+    public FileSystem getFileSystem() throws IOException {
+        FileSystem fs = fileSystem;
+        if (fs == null) {
+            synchronized (this) {
+                fs = fileSystem;
+                if (fs == null) {
+                    fs = doAs((PrivilegedExceptionAction<FileSystem>) () -> FileSystem.get(configuration));
+                    if (currentDir != null && !detached) {
+                        fs.setWorkingDirectory(new Path(currentDir));
+                    }
+                    fileSystem = fs;
+                }
+            }
+        }
+        return fs;
+    }
+
+    public String getCurrentDir() {
+        String dir = currentDir;
+        if (dir == null) {
+            try {
+                final FileStatus[] fileStatuses = getFileSystem().globStatus(new Path(Path.CUR_DIR));
+                if (fileStatuses == null || fileStatuses.length == 0) {
+                    return "";
+                }
+                dir = fileStatuses[0].getPath().toUri().getPath();
+                homeDir = currentDir = dir;
+            } catch (Exception e) {
+                return "";
+            }
+        }
+        return dir;
+    }
+
+    public String getHomeDir() {
+        if (homeDir == null) {
+            getCurrentDir();
+        }
+        if (homeDir == null) {//in case of failure
+            return ".";
+        }
+        return homeDir;
+    }
+
+    /**
+     * Changes current working directory. Hadoop commands are resolving relative paths against the working directory
+     * of the file system, so it's updated here - once per change, not before every command.
+     *
+     * @param dir absolute path
+     */
+    public void setCurrentDir(String dir) throws IOException {
+        if (detached) {
+            workingDirectory = new Path(dir);
+        } else {
+            getFileSystem().setWorkingDirectory(new Path(dir));
+        }
+        currentDir = dir;
+    }
+
+    /**
+     * @param path absolute or relative path
+     * @return path resolved against current working directory
+     */
+    public Path resolve(String path) {
+        final Path p = new Path(path);
+        final String dir = getCurrentDir();
+        if (p.isAbsolute() || StringUtils.isEmpty(dir)) {
+            return p;
+        }
+        return new Path(dir, p);
+    }
+
+    /**
+     * @return user switched by <code>su</code> or null for the user of the process
+     */
+    public UserGroupInformation getUser() {
+        final UserPool.Lease lease = userLease;
+        return lease == null ? null : lease.getUser();
+    }
+
+    /**
+     * Switches the user of the session, the lease of the previous user is closed.
+     */
+    public void setUser(UserPool.Lease lease) {
+        final UserPool.Lease previous;
+        synchronized (this) {
+            previous = userLease;
+            userLease = lease;
+            reset();
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @return scope of the background prefetching or null if the session does not prefetch (one-shot commands, daemon connections)
+     */
+    public MetadataPrefetcher.Scope getPrefetchScope() {
+        return prefetchScope;
+    }
+
+    public void setPrefetchScope(MetadataPrefetcher.Scope prefetchScope) {
+        this.prefetchScope = prefetchScope;
+    }
+
+    /**
+     * Runs the action as the user of the session.
+     */
+    public <T> T doAs(PrivilegedAction<T> action) {
+        final UserGroupInformation user = getUser();
+        return user == null ? action.run() : user.doAs(action);
+    }
+
+    public <T> T doAs(PrivilegedExceptionAction<T> action) throws IOException {
+        final UserGroupInformation user = getUser();
+        try {
+            return user == null ? action.run() : user.doAs(action);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        final UserPool.Lease lease = userLease;
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
+    /**
+     * Forgets the file system handle and directories, eg. after the active user was changed.
+     * The cached metadata are kept, they are cached per user.
+     */
+    public synchronized void reset() {
+        fileSystem = null;
+        currentDir = null;
+        homeDir = null;
+        workingDirectory = null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache of user groups resolved by the NameNode. Expired entries are still served while they are refreshed in the background,
+ * so the prompt never waits for the network. Failures are cached too (as no groups).
+ *
+ * @author Vitasek L.
+ */
+public class UserGroupsCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserGroupsCache.class);
+
+    public static final long DEFAULT_TTL_MILLIS = 300_000;
+
+    private static final String[] NO_GROUPS = new String[0];
+
+    private final GroupsLoader loader;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "hdfs-shell-groups");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UserGroupsCache(GroupsLoader loader, long ttlMillis) {
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return groups of the user, loaded synchronously if they are not cached or expired
+     */
+    public String[] getGroups(String user) {
+        final Entry entry = entries.get(user);
+        if (entry != null && !entry.isExpired()) {
+            return entry.groups;
+        }
+        return load(user);
+    }
+
+    /**
+     * Never blocks. Missing or expired entry is refreshed in the background.
+     *
+     * @return cached (possibly expired) groups of the user or null if the groups are not known yet
+     */
+    public String[] getGroupsIfPresent(String user) {
+        final Entry entry = entries.get(user);
+        if ((entry == null || entry.isExpired()) && refreshing.add(user)) {
+            executor.execute(() -> {
+                try {
+                    load(user);
+                } finally {
+                    refreshing.remove(user);
+                }
+            });
+        }
+        return entry == null ? null : entry.groups;
+    }
+
+    /**
+     * Drops the groups of the user, they are loaded again on the next use.
+     */
+    public void invalidate(String user) {
+        entries.remove(user);
+    }
+
+    private String[] load(String user) {
+        String[] groups;
+        try {
+            groups = loader.load(user);
+        } catch (IOException e) {
+            logger.debug("Failed to get groups for user {}", user, e);
+            groups = NO_GROUPS;
+        }
+        entries.put(user, new Entry(groups == null ? NO_GROUPS : groups, System.currentTimeMillis() + ttlMillis));
+        return groups == null ? NO_GROUPS : groups;
+    }
+
+    @FunctionalInterface
+    public interface GroupsLoader {
+        String[] load(String user) throws IOException;
+    }
+
+    private static final class Entry {
+        private final String[] groups;
+        private final long expiresAt;
+
+        private Entry(String[] groups, long expiresAt) {
+            this.groups = groups;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return expiresAt < System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.avast.server.hdfsshell.commands;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of {@link UserGroupInformation}s of users switched by <code>su</code>. The {@link FileSystem} cache of Hadoop is keyed
+ * by the UGI, so commands executed by {@link UserGroupInformation#doAs} of a pooled UGI reuse the file system
+ * (and its NameNode connection) of the user.
+ * <p>
+ * A UGI is held by leases of the sessions using it. Users without a lease are closed after the idle timeout,
+ * the number of pooled users is bounded.
+ *
+ * @author Vitasek L.
+ */
+@Component
+public class UserPool {
+    private static final Logger logger = LoggerFactory.getLogger(UserPool.class);
+
+    public static final int DEFAULT_MAX_USERS = 16;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 600_000;
+
+    private static final int EVICTED = -1;
+
+    private final int maxUsers;
+    private final long idleTimeoutMillis;
+    private final Map<String, Entry> users = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    @Autowired
+    public UserPool(@Value("${user.pool.max.users:" + DEFAULT_MAX_USERS + "}") int maxUsers,
+                    @Value("${user.pool.idle.timeout.ms:" + DEFAULT_IDLE_TIMEOUT_MILLIS + "}") long idleTimeoutMillis) {
+        this.maxUsers = Math.max(1, maxUsers);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "hdfs-shell-user-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return lease of the pooled UGI of the user, the UGI is created on the first use
+     */
+    public Lease acquire(String user) throws IOException {
+        while (true) {
+            Entry entry = users.get(user);
+            if (entry == null) {
+                if (users.size() >= maxUsers && !evictLeastRecentlyUsed()) {
+                    throw new IOException("Too many users (max " + maxUsers + "), try it again later");
+                }
+                final Entry created = new Entry(createUser(user));
+                entry = users.putIfAbsent(user, created);
+                if (entry == null) {
+                    entry = created;
+                }
+            }
+            final int leases = entry.leases.get();
+            if (leases != EVICTED && entry.leases.compareAndSet(leases, leases + 1)) {
+                return new Lease(entry);
+            }
+            //evicted meanwhile
+            users.remove(user, entry);
+        }
+    }
+
+    private static UserGroupInformation createUser(String user) throws IOException {
+        if (UserGroupInformation.isSecurityEnabled()) {
+            return UserGroupInformation.createProxyUser(user, UserGroupInformation.getLoginUser());
+        }
+        return UserGroupInformation.createRemoteUser(user);
+    }
+
+    private void evictIdle() {
+        final long now = System.currentTimeMillis();
+        users.forEach((user, entry) -> {
+            if (now - entry.lastUsed >= idleTimeoutMillis) {
+                evict(user, entry);
+            }
+        });
+    }
+
+    private boolean evictLeastRecentlyUsed() {
+        Map.Entry<String, Entry> oldest = null;
+        for (Map.Entry<String, Entry> candidate : users.entrySet()) {
+            if (candidate.getValue().leases.get() == 0 && (oldest == null || candidate.getValue().lastUsed < oldest.getValue().lastUsed)) {
+                oldest = candidate;
+            }
+        }
+        return oldest != null && evict(oldest.getKey(), oldest.getValue());
+    }
+
+    private boolean evict(String user, Entry entry) {
+        if (!entry.leases.compareAndSet(0, EVICTED)) {
+            return false;
+        }
+        users.remove(user, entry);
+        try {
+            FileSystem.closeAllForUGI(entry.ugi);
+        } catch (IOException e) {
+            logger.warn("Failed to close file systems of user " + user, e);
+        }
+        return true;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "users=" + size() + " maxUsers=" + maxUsers + " idleTimeout=" + idleTimeoutMillis + "ms";
+    }
+
+    private static final class Entry {
+        private final UserGroupInformation ugi;
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Entry(UserGroupInformation ugi) {
+            this.ugi = ugi;
+        }
+    }
+
+    /**
+     * Use of a pooled UGI by one session, the UGI is not evicted until the lease is closed.
+     */
+    public static final class Lease implements Closeable {
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public UserGroupInformation getUser() {
+            return entry.ugi;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                entry.lastUsed = System.currentTimeMillis();
+                entry.leases.decrementAndGet();
+            }
+        }
+    }
+}
@@ -17,23 +17,35 @@ package com.avast.server.hdfsshell.commands;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mvnsearch.spring.boot.shell.ClientConnection;
+import org.mvnsearch.spring.boot.shell.ShellCommandExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.CommandResult;
 import org.springframework.shell.core.JLineShellComponent;
 import org.springframework.shell.core.annotation.CliCommand;
 import org.springframework.shell.core.annotation.CliOption;
@@ -56,10 +68,21 @@ public class XScriptCommands implements CommandMarker {
 	public void script(
 		@CliOption(key = { "", "file" }, help = "The file to locate and execute", mandatory = true) final File script,
 		@CliOption(key = "lineNumbers", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false", help = "Display line numbers when executing the script") final boolean lineNumbers,
-		@CliOption(key = "skipErrors", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "true", help = "Skip error command inside script") final boolean skipErrors) {
+		@CliOption(key = "skipErrors", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "true", help = "Skip error command inside script") final boolean skipErrors,
+		@CliOption(key = "parallel", mandatory = false, unspecifiedDefaultValue = "1", help = "Number of lines executed concurrently, blank lines are barriers") final int parallel) {
 
 		JLineShellComponent shell = applicationContext.getBean("shell", JLineShellComponent.class);
 		Assert.notNull(script, "Script file to parse is required");
+		applicationContext.getBean(ContextCommands.class).runScript(() -> {
+			if (parallel > 1) {
+				scriptParallel(shell, script, lineNumbers, skipErrors, parallel);
+			} else {
+				scriptSequential(shell, script, lineNumbers, skipErrors);
+			}
+		});
+	}
+
+	private void scriptSequential(JLineShellComponent shell, File script, boolean lineNumbers, boolean skipErrors) {
 		double startedNanoseconds = System.nanoTime();
 		final InputStream inputStream = openScript(script);
 
@@ -96,6 +119,133 @@ public class XScriptCommands implements CommandMarker {
 		}
 	}
 
+	/**
+	 * Lines between blank lines (barriers) are executed concurrently, the next group starts when the whole group is finished.
+	 * Lines changing the session (<code>cd</code>, <code>su</code>) are barriers too, they are executed alone.
+	 * Output of every line is collected and printed at once after the line (with its number if lineNumbers is set).
+	 * Without skipErrors the script is aborted when a failed line is awaited, lines of the group which are already running are finished,
+	 * the others are not started.
+	 */
+	private void scriptParallel(JLineShellComponent shell, File script, boolean lineNumbers, boolean skipErrors, int parallel) {
+		final ShellCommandExecutor executor = new ShellCommandExecutor(shell, applicationContext.getBeansOfType(CommandMarker.class).values());
+		final PrintStream connectionOut = ClientConnection.context.get();
+		final PrintStream out = connectionOut != null ? connectionOut : System.out;
+		final Map<String, Object> session = ClientConnection.sessionContext.get();
+		final long startedNanoseconds = System.nanoTime();
+		final ExecutorService pool = Executors.newFixedThreadPool(parallel);
+		final AtomicInteger executed = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final InputStream inputStream = openScript(script);
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(inputStream));
+			final List<Future<?>> group = new ArrayList<>();
+			String line;
+			int i = 0;
+			boolean quit = false;
+			while (!quit && (line = in.readLine()) != null) {
+				i++;
+				final String trimmed = line.trim();
+				if (trimmed.isEmpty()) {
+					awaitGroup(group, skipErrors, failed);
+				} else if (trimmed.startsWith("q") || trimmed.startsWith("ex")) {
+					quit = true;
+				} else {
+					final boolean barrier = isSessionCommand(trimmed);
+					if (barrier) {
+						awaitGroup(group, skipErrors, failed);
+					}
+					final int lineNumber = i;
+					final String command = line;
+					group.add(pool.submit(() -> {
+						executed.incrementAndGet();
+						if (!executeLine(executor, lineNumbers ? lineNumber : 0, command, session, out)) {
+							failed.incrementAndGet();
+						}
+					}));
+					if (barrier) {
+						awaitGroup(group, skipErrors, failed);
+					}
+				}
+				if (!skipErrors && failed.get() > 0) {
+					awaitGroup(group, skipErrors, failed);
+					throw new IllegalStateException("Script execution aborted");
+				}
+			}
+			awaitGroup(group, skipErrors, failed);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			pool.shutdownNow();
+			IOUtils.closeQuietly(inputStream, in);
+			double executionDurationInSeconds = (System.nanoTime() - startedNanoseconds) / 1000000000D;
+			out.println("Executed " + executed.get() + " lines (" + failed.get() + " failed) in " + MathUtils.round(executionDurationInSeconds, 3) + " seconds");
+			logger.debug("Script required " + MathUtils.round(executionDurationInSeconds, 3) + " seconds to execute");
+		}
+	}
+
+	private static boolean isSessionCommand(String line) {
+		final String command = line.split("\\s+", 2)[0];
+		return "cd".equals(command) || "su".equals(command);
+	}
+
+	private static void awaitGroup(List<Future<?>> group, boolean skipErrors, AtomicInteger failed) {
+		try {
+			for (Future<?> future : group) {
+				future.get();
+				if (!skipErrors && failed.get() > 0) {
+					throw new IllegalStateException("Script execution aborted");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Script execution interrupted");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			group.clear();
+		}
+	}
+
+	/**
+	 * @param lineNumber number of the line to print with the line, 0 to print the line only
+	 * @return false if the command failed or the HDFS command finished with non zero result code
+	 */
+	private static boolean executeLine(ShellCommandExecutor executor, int lineNumber, String line, Map<String, Object> session, PrintStream out) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final PrintStream lineOut;
+		try {
+			lineOut = new PrintStream(buffer, false, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		ClientConnection.context.set(lineOut);
+		ClientConnection.sessionContext.set(session);
+		ClientConnection.setResultCode(0);
+		final boolean success;
+		try {
+			final CommandResult result = executor.execute(line);
+			if (!result.isSuccess()) {
+				lineOut.println(result.getException().getMessage());
+			} else if (result.getResult() != null) {
+				lineOut.println(result.getResult());
+			}
+			final Integer resultCode = ClientConnection.getResultCode();
+			success = result.isSuccess() && (resultCode == null || resultCode == 0);
+		} finally {
+			ClientConnection.context.remove();
+			ClientConnection.sessionContext.remove();
+		}
+		lineOut.flush();
+		final byte[] lineOutput = buffer.toByteArray();
+		synchronized (out) {
+			out.println((lineNumber > 0 ? "Line " + lineNumber + ": " : "") + line + (success ? "" : " [FAILED]"));
+			out.write(lineOutput, 0, lineOutput.length);
+			out.flush();
+		}
+		return success;
+	}
+
 	/**
 	 * Opens the given script for reading
 	 *
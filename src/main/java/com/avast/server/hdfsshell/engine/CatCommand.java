@@ -0,0 +1,96 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.PathIsDirectoryException;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+/**
+ * Implementation of <code>cat [-ignoreCrc]</code> with the same output as Hadoop's <code>cat</code>.
+ * Files are read into a buffer reused by all commands of the thread (by {@link ByteBufferReadable#read(ByteBuffer)} if the stream supports it)
+ * and the buffer is filled before it's written, so the output stream gets large writes it can pass to the socket without copying.
+ *
+ * @author Vitasek L.
+ */
+public class CatCommand extends NativeCommand {
+
+    public static final String NAME = "cat";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    private boolean verifyChecksum;
+
+    public CatCommand(Configuration conf, PrintStream out, PrintStream err) {
+        super(NAME, conf, out, err);
+    }
+
+    /**
+     * @return true if the options are supported by this implementation
+     */
+    public static boolean isSupported(String[] args) {
+        for (String arg : args) {
+            if ("--".equals(arg)) {
+                return true;
+            }
+            if (arg.startsWith("-") && arg.length() > 1 && !"-ignoreCrc".equals(arg)) {
+                return false;
+            }
+        }
+        return args.length > 0;
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        verifyChecksum = !popFlag(args, "-ignoreCrc");
+        checkNoOtherOptions(args);
+        if (args.isEmpty()) {
+            throw new IllegalArgumentException("Not enough arguments: expected 1 but got 0");
+        }
+    }
+
+    @Override
+    protected void processPathArgument(PathData item) throws IOException {
+        if (item.stat.isDirectory()) {
+            throw new PathIsDirectoryException(item.toString());
+        }
+        item.fs.setVerifyChecksum(verifyChecksum);
+        final ByteBuffer buffer = BUFFER.get();
+        try (FSDataInputStream in = item.fs.open(item.path, BUFFER_SIZE)) {
+            final boolean byteBufferReadable = in.getWrappedStream() instanceof ByteBufferReadable;
+            int read;
+            do {
+                buffer.clear();
+                read = fill(in, buffer, byteBufferReadable);
+                if (buffer.position() > 0) {
+                    out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+                }
+            } while (read >= 0);
+        }
+    }
+
+    /**
+     * @return result of the last read, negative at the end of the file
+     */
+    private static int fill(FSDataInputStream in, ByteBuffer buffer, boolean byteBufferReadable) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+            read = byteBufferReadable ? in.read(buffer) : readArray(in, buffer);
+        }
+        return read;
+    }
+
+    private static int readArray(FSDataInputStream in, ByteBuffer buffer) throws IOException {
+        final int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,322 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Implementation of <code>find</code> with concurrent traversal of directories.
+ * All predicates are evaluated on the statuses returned by the directory listing (no additional NameNode calls),
+ * subtrees are pruned before they are listed (<code>-maxdepth</code>, <code>-prune</code>)
+ * and the traversal stops as soon as the <code>-limit</code> is reached.
+ * Matching paths are printed as they are found, the order is not defined for more than 1 thread.
+ * <pre>
+ * find [-P threads] [path ...] [expression]
+ *  -name glob, -iname glob    base name of the path matches the glob
+ *  -type f|d                  path is a file/directory
+ *  -size [+-]n[ckMG]          size is (more than, less than) n units, default unit is byte
+ *  -mtime [+-]n               modified n days ago (more than, less than)
+ *  -mmin [+-]n                modified n minutes ago (more than, less than)
+ *  -user name, -group name    owner/group of the path
+ *  -mindepth n, -maxdepth n   depth limits, the paths from command line have depth 0
+ *  -prune glob                do not descend into directories matching the glob
+ *  -limit n                   stop after n matching paths
+ *  -print, -print0             print the path followed by a new line/NUL character (default action)
+ *  -a, -and                   conjunction of predicates (the default)
+ * </pre>
+ * All predicates have to be satisfied. Other expressions (eg. <code>-o</code>, <code>-not</code>, <code>-exec</code>) are rejected,
+ * Hadoop 2.6 has no <code>find</code> to fall back to.
+ *
+ * @author Vitasek L.
+ */
+public class FindCommand extends NativeCommand {
+
+    public static final String NAME = "find";
+
+    private final List<Predicate<FileStatus>> predicates = new ArrayList<>();
+    private final List<Pattern> prunePatterns = new ArrayList<>();
+    private final AtomicLong matched = new AtomicLong();
+
+    private int minDepth = 0;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long limit = Long.MAX_VALUE;
+    private ForkJoinPool pool;
+    private volatile boolean stopped;
+    private boolean print0;
+
+    public FindCommand(Configuration conf, PrintStream out, PrintStream err) {
+        super(NAME, conf, out, err);
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        final int threads = popIntOption(args, THREADS_OPTION, Runtime.getRuntime().availableProcessors(), 1);
+        final long now = System.currentTimeMillis();
+        final Iterator<String> iterator = args.iterator();
+        boolean expression = false;
+        while (iterator.hasNext()) {
+            final String arg = iterator.next();
+            if (!expression && !arg.startsWith("-")) {
+                continue; //path
+            }
+            expression = true;
+            iterator.remove();
+            switch (arg) {
+                case "-print":
+                case "-a":
+                case "-and":
+                    break;
+                case "-print0":
+                    print0 = true;
+                    break;
+                case "-name":
+                    final Pattern namePattern = GlobPattern.compile(nextValue(iterator, arg));
+                    predicates.add(status -> namePattern.matcher(status.getPath().getName()).matches());
+                    break;
+                case "-iname":
+                    final Pattern inamePattern = Pattern.compile(GlobPattern.compile(nextValue(iterator, arg)).pattern(), Pattern.CASE_INSENSITIVE);
+                    predicates.add(status -> inamePattern.matcher(status.getPath().getName()).matches());
+                    break;
+                case "-type":
+                    final String type = nextValue(iterator, arg);
+                    if ("f".equals(type)) {
+                        predicates.add(FileStatus::isFile);
+                    } else if ("d".equals(type)) {
+                        predicates.add(FileStatus::isDirectory);
+                    } else {
+                        throw new IllegalArgumentException("Unknown argument to -type: " + type);
+                    }
+                    break;
+                case "-size":
+                    final String size = nextValue(iterator, arg);
+                    final long unit = sizeUnit(size);
+                    final boolean hasUnit = !size.isEmpty() && "ckMG".indexOf(size.charAt(size.length() - 1)) >= 0;
+                    final LongPredicate sizePredicate = numericPredicate(arg, hasUnit ? size.substring(0, size.length() - 1) : size);
+                    predicates.add(status -> status.isFile() && sizePredicate.test((status.getLen() + unit - 1) / unit));
+                    break;
+                case "-mtime":
+                    final LongPredicate daysPredicate = numericPredicate(arg, nextValue(iterator, arg));
+                    predicates.add(status -> daysPredicate.test(TimeUnit.MILLISECONDS.toDays(now - status.getModificationTime())));
+                    break;
+                case "-mmin":
+                    final LongPredicate minutesPredicate = numericPredicate(arg, nextValue(iterator, arg));
+                    predicates.add(status -> minutesPredicate.test(TimeUnit.MILLISECONDS.toMinutes(now - status.getModificationTime())));
+                    break;
+                case "-user":
+                    final String user = nextValue(iterator, arg);
+                    predicates.add(status -> user.equals(status.getOwner()));
+                    break;
+                case "-group":
+                    final String group = nextValue(iterator, arg);
+                    predicates.add(status -> group.equals(status.getGroup()));
+                    break;
+                case "-mindepth":
+                    minDepth = parseNonNegative(arg, nextValue(iterator, arg));
+                    break;
+                case "-maxdepth":
+                    maxDepth = parseNonNegative(arg, nextValue(iterator, arg));
+                    break;
+                case "-prune":
+                    prunePatterns.add(GlobPattern.compile(nextValue(iterator, arg)));
+                    break;
+                case "-limit":
+                    limit = parseNonNegative(arg, nextValue(iterator, arg));
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("unsupported expression: " + arg);
+                    }
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+        if (args.isEmpty()) {
+            args.add(Path.CUR_DIR);
+        }
+        pool = newWorkerPool(threads);
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException, InterruptedException {
+        try {
+            for (String arg : args) {
+                if (stopped) {
+                    break;
+                }
+                try {
+                    for (PathData item : expandArgument(arg)) {
+                        find(item);
+                    }
+                } catch (IOException e) {
+                    displayError(e);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void find(PathData item) {
+        if (limit == 0) {
+            stopped = true;
+            return;
+        }
+        visit(item.stat, item.toString(), 0);
+        if (isTraversable(item.stat, 0)) {
+            pool.invoke(new FindTask(item.fs, item.path, item.toString(), 0));
+        }
+    }
+
+    private void visit(FileStatus status, String pathString, int depth) {
+        if (depth < minDepth || !matches(status)) {
+            return;
+        }
+        final long count = matched.incrementAndGet();
+        if (count > limit) {
+            stopped = true;
+            return;
+        }
+        if (print0) {
+            out.print(pathString + '\0');
+        } else {
+            out.println(pathString);
+        }
+        if (count == limit) {
+            stopped = true;
+        }
+    }
+
+    private boolean matches(FileStatus status) {
+        for (Predicate<FileStatus> predicate : predicates) {
+            if (!predicate.test(status)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isTraversable(FileStatus status, int depth) {
+        if (stopped || !status.isDirectory() || depth >= maxDepth) {
+            return false;
+        }
+        final String name = status.getPath().getName();
+        for (Pattern prunePattern : prunePatterns) {
+            if (prunePattern.matcher(name).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class FindTask extends RecursiveAction {
+        private final FileSystem fs;
+        private final Path path;
+        private final String pathString;
+        private final int depth;
+
+        private FindTask(FileSystem fs, Path path, String pathString, int depth) {
+            this.fs = fs;
+            this.path = path;
+            this.pathString = pathString;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped) {
+                return;
+            }
+            final FileStatus[] children;
+            try {
+                children = blocking(() -> fs.listStatus(path));
+            } catch (IOException e) {
+                displayError(e);
+                return;
+            }
+            final List<FindTask> subtasks = new ArrayList<>();
+            for (FileStatus child : children) {
+                if (stopped) {
+                    return;
+                }
+                final String childString = childPathString(pathString, child);
+                visit(child, childString, depth + 1);
+                if (isTraversable(child, depth + 1)) {
+                    subtasks.add(new FindTask(fs, child.getPath(), childString, depth + 1));
+                }
+            }
+            ForkJoinTask.invokeAll(subtasks);
+        }
+    }
+
+    private static String nextValue(Iterator<String> iterator, String option) {
+        if (!iterator.hasNext()) {
+            throw new IllegalArgumentException("Missing argument to " + option);
+        }
+        final String value = iterator.next();
+        iterator.remove();
+        return value;
+    }
+
+    private static int parseNonNegative(String option, String value) {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            //handled below
+        }
+        throw new IllegalArgumentException("Invalid argument to " + option + ": " + value);
+    }
+
+    private static long sizeUnit(String size) {
+        switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1)) {
+            case 'c':
+                return 1L;
+            case 'k':
+                return 1024L;
+            case 'M':
+                return 1024L * 1024;
+            case 'G':
+                return 1024L * 1024 * 1024;
+            default:
+                return 1L;
+        }
+    }
+
+    /**
+     * @return predicate for <code>n</code> (equal), <code>+n</code> (greater than) or <code>-n</code> (less than)
+     */
+    private static LongPredicate numericPredicate(String option, String value) {
+        final long number;
+        try {
+            number = Long.parseLong(value.startsWith("+") || value.startsWith("-") ? value.substring(1) : value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid argument to " + option + ": " + value);
+        }
+        if (value.startsWith("+")) {
+            return n -> n > number;
+        }
+        if (value.startsWith("-")) {
+            return n -> n < number;
+        }
+        return n -> n == number;
+    }
+}
@@ -0,0 +1,437 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Implementation of <code>getmerge</code> which reads ahead a window of part files in parallel
+ * or merges sorted part files into one sorted file.
+ * <pre>
+ * getmerge [-t parts] [-m megabytes] [-nl] [-sort [-d delimiter -k field]] src localdst
+ *  -t parts       number of part files opened and read ahead concurrently
+ *  -m megabytes   memory budget for the read buffers, default 64
+ *  -nl            add a newline character at the end of each file
+ *  -sort          k-way merge of lines of sorted part files
+ *  -d delimiter   field delimiter of the sort key, the whole line is the key by default
+ *  -k field       index of the sort key field (starting from 1), default 1
+ * </pre>
+ * Every part of the window gets the same share of the budget, so a slow part never blocks the others
+ * and the memory use is bounded. The single writer appends the parts to the local file in the original order.
+ * <p>
+ * The sorted merge keeps only one buffer per open part - the next line of every part is held in a heap,
+ * the smallest one is written and replaced by the following line of the same part.
+ * At most {@value #MAX_FAN_IN} parts are open at once, more parts are merged in passes through temporary local files
+ * next to the target. Lines with equal keys keep the order of the parts.
+ * Lines are handled as raw bytes - keys are compared byte by byte as unsigned values (the order of <code>LC_ALL=C sort</code>,
+ * for UTF-8 the same as the order of code points) and every line is written unchanged including its <code>\n</code>
+ * or <code>\r\n</code> terminator. The terminator is not a part of the key, only a missing <code>\n</code>
+ * at the end of a part is added.
+ *
+ * @author Vitasek L.
+ */
+public class GetMergeCommand extends NativeCommand {
+
+    public static final String NAME = "getmerge";
+
+    private static final int DEFAULT_BUDGET_MB = 64;
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_LINE_BUFFER_SIZE = 64 * 1024;
+    static final int MAX_FAN_IN = 128;
+
+    public static final String SORT_OPTION = "-sort";
+
+    private int window;
+    private long budget;
+    private boolean addNewLine;
+    private boolean sort;
+    private byte[] delimiter;
+    private int keyField;
+
+    public GetMergeCommand(Configuration conf, PrintStream out, PrintStream err) {
+        super(NAME, conf, out, err);
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        window = popIntOption(args, TRANSFER_THREADS_OPTION, 1, 1);
+        budget = popIntOption(args, "-m", DEFAULT_BUDGET_MB, 1) * 1024L * 1024L;
+        addNewLine = popFlag(args, "-nl");
+        sort = popFlag(args, SORT_OPTION);
+        final String delimiterOption = popOptionValue(args, "-d");
+        keyField = popIntOption(args, "-k", 1, 1);
+        delimiter = delimiterOption == null ? null : delimiterOption.getBytes(StandardCharsets.UTF_8);
+        if (delimiter != null && delimiter.length == 0) {
+            throw new IllegalArgumentException("Delimiter must not be empty");
+        }
+        if (!sort && (delimiter != null || keyField != 1)) {
+            throw new IllegalArgumentException("Options -d and -k require " + SORT_OPTION);
+        }
+        if (sort && addNewLine) {
+            throw new IllegalArgumentException("Option -nl cannot be used with " + SORT_OPTION);
+        }
+        checkNoOtherOptions(args);
+        if (args.size() != 2) {
+            throw new IllegalArgumentException("Expected 2 arguments: src localdst");
+        }
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException, InterruptedException {
+        final String dst = args.removeLast();
+        final List<PathData> parts = new ArrayList<>();
+        for (PathData item : expandArgument(args.getFirst())) {
+            collectParts(item, parts);
+        }
+        final long start = System.nanoTime();
+        final File dstFile = new File(dst);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(dstFile), MAX_CHUNK_SIZE)) {
+            if (sort) {
+                mergeSorted(parts, dstFile, os);
+            } else {
+                merge(parts, os);
+            }
+        }
+        out.println("Merged " + formatTransfer(parts.size(), dstFile.length(), System.nanoTime() - start));
+    }
+
+    /**
+     * Same order as in Hadoop - files of a directory (not recursive) sorted by name.
+     */
+    static void collectParts(PathData item, List<PathData> parts) throws IOException {
+        if (!item.stat.isDirectory()) {
+            parts.add(item);
+            return;
+        }
+        for (PathData child : item.getDirectoryContents()) {
+            if (child.stat.isFile()) {
+                parts.add(child);
+            }
+        }
+    }
+
+    private void merge(List<PathData> parts, OutputStream os) throws IOException, InterruptedException {
+        final int windowSize = Math.min(window, Math.max(parts.size(), 1));
+        final long partBudget = budget / windowSize;
+        final int chunkSize = (int) Math.max(1, Math.min(MAX_CHUNK_SIZE, partBudget));
+        final int chunksPerPart = (int) Math.max(1, partBudget / chunkSize);
+        final ExecutorService executor = Executors.newFixedThreadPool(windowSize);
+        final Deque<PartReader> readers = new ArrayDeque<>(windowSize);
+        try {
+            int next = 0;
+            while (next < parts.size() && readers.size() < windowSize) {
+                readers.add(startReader(executor, parts.get(next++), chunkSize, chunksPerPart));
+            }
+            while (!readers.isEmpty()) {
+                readers.poll().writeTo(os);
+                if (addNewLine) {
+                    os.write('\n');
+                }
+                if (next < parts.size()) {
+                    readers.add(startReader(executor, parts.get(next++), chunkSize, chunksPerPart));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void mergeSorted(List<PathData> parts, File dstFile, OutputStream os) throws IOException {
+        final int bufferSize = (int) Math.max(1024, Math.min(MAX_LINE_BUFFER_SIZE, budget / Math.max(Math.min(parts.size(), MAX_FAN_IN), 1)));
+        List<IOCallable<InputStream>> sources = new ArrayList<>(parts.size());
+        for (PathData part : parts) {
+            sources.add(() -> part.fs.open(part.path, bufferSize));
+        }
+        List<File> runs = new ArrayList<>();
+        try {
+            while (sources.size() > MAX_FAN_IN) {
+                final List<File> passRuns = new ArrayList<>();
+                final List<IOCallable<InputStream>> passSources = new ArrayList<>();
+                try {
+                    for (int from = 0; from < sources.size(); from += MAX_FAN_IN) {
+                        final File run = File.createTempFile(dstFile.getName() + ".", ".merging", dstFile.getAbsoluteFile().getParentFile());
+                        passRuns.add(run);
+                        try (OutputStream runOut = new BufferedOutputStream(new FileOutputStream(run), MAX_CHUNK_SIZE)) {
+                            mergeSorted(sources.subList(from, Math.min(from + MAX_FAN_IN, sources.size())), bufferSize, runOut);
+                        }
+                        passSources.add(() -> new FileInputStream(run));
+                    }
+                } finally {
+                    deleteAll(runs);
+                    runs = passRuns;
+                }
+                sources = passSources;
+            }
+            mergeSorted(sources, bufferSize, os);
+        } finally {
+            deleteAll(runs);
+        }
+    }
+
+    private static void deleteAll(List<File> files) throws IOException {
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    void mergeSorted(List<IOCallable<InputStream>> sources, int bufferSize, OutputStream os) throws IOException {
+        final PriorityQueue<LineCursor> heap = new PriorityQueue<>(Math.max(sources.size(), 1));
+        final List<LineCursor> cursors = new ArrayList<>(sources.size());
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                final LineCursor cursor = new LineCursor(i, sources.get(i).call(), bufferSize);
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            LineCursor cursor;
+            while ((cursor = heap.poll()) != null) {
+                os.write(cursor.line, 0, cursor.length);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            os.flush();
+        } finally {
+            for (LineCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareUnsigned(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        final int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            final int result = (a[aFrom + i] & 0xff) - (b[bFrom + i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return (aTo - aFrom) - (bTo - bFrom);
+    }
+
+    /**
+     * Reads the lines of one part. The current line (with its terminator) is held in a buffer which is reused for the next line.
+     */
+    private final class LineCursor implements Comparable<LineCursor> {
+        private final int index;
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        private byte[] line = new byte[128];
+        private int length;
+        private int keyStart;
+        private int keyEnd;
+
+        private LineCursor(int index, InputStream in, int bufferSize) {
+            this.index = index;
+            this.in = in;
+            this.buffer = new byte[bufferSize];
+        }
+
+        private boolean advance() throws IOException {
+            length = 0;
+            boolean terminated = false;
+            while (!terminated) {
+                if (position == limit) {
+                    limit = Math.max(in.read(buffer), 0);
+                    position = 0;
+                    if (limit == 0) {
+                        break;
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                terminated = end < limit;
+                if (terminated) {
+                    end++;
+                }
+                append(buffer, position, end - position);
+                position = end;
+            }
+            if (length == 0) {
+                return false;
+            }
+            int contentEnd = length;
+            if (terminated) {
+                contentEnd--;
+                if (contentEnd > 0 && line[contentEnd - 1] == '\r') {
+                    contentEnd--;
+                }
+            } else {
+                append(new byte[]{'\n'}, 0, 1);
+            }
+            findKey(contentEnd);
+            return true;
+        }
+
+        private void append(byte[] data, int offset, int count) {
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+            }
+            System.arraycopy(data, offset, line, length, count);
+            length += count;
+        }
+
+        /**
+         * Sets the key to the whole line or the field of the line, the key is empty if the line has less fields.
+         */
+        private void findKey(int contentEnd) {
+            keyStart = 0;
+            keyEnd = contentEnd;
+            if (delimiter == null) {
+                return;
+            }
+            int start = 0;
+            for (int field = 1; field < keyField; field++) {
+                final int found = indexOf(line, start, contentEnd, delimiter);
+                if (found < 0) {
+                    keyEnd = 0;
+                    return;
+                }
+                start = found + delimiter.length;
+            }
+            final int end = indexOf(line, start, contentEnd, delimiter);
+            keyStart = start;
+            keyEnd = end < 0 ? contentEnd : end;
+        }
+
+        private void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(LineCursor o) {
+            final int result = compareUnsigned(line, keyStart, keyEnd, o.line, o.keyStart, o.keyEnd);
+            return result != 0 ? result : Integer.compare(index, o.index);
+        }
+    }
+
+    private static PartReader startReader(ExecutorService executor, PathData part, int chunkSize, int chunks) {
+        final PartReader reader = new PartReader(part.fs, part.path, chunkSize, chunks);
+        executor.execute(reader);
+        return reader;
+    }
+
+    /**
+     * Reads a part into a queue of chunks, the end of the part is marked by an empty chunk.
+     * A chunk is allocated only when a permit is free and the permit is returned when the chunk is written,
+     * so the part never holds more than its share of the budget (including the chunk being read and the one being written).
+     */
+    private static final class PartReader implements Runnable {
+        private static final Chunk END = new Chunk(new byte[0], 0, null);
+
+        private final FileSystem fs;
+        private final Path path;
+        private final int chunkSize;
+        private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        private final Semaphore freeChunks;
+
+        private PartReader(FileSystem fs, Path path, int chunkSize, int capacity) {
+            this.fs = fs;
+            this.path = path;
+            this.chunkSize = chunkSize;
+            this.freeChunks = new Semaphore(capacity);
+        }
+
+        @Override
+        public void run() {
+            Chunk last = END;
+            try (FSDataInputStream in = fs.open(path, chunkSize)) {
+                while (true) {
+                    freeChunks.acquire();
+                    final byte[] buffer = new byte[chunkSize];
+                    int length = 0;
+                    int read;
+                    while (length < chunkSize && (read = in.read(buffer, length, chunkSize - length)) >= 0) {
+                        length += read;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                    chunks.add(new Chunk(buffer, length, null));
+                }
+            } catch (IOException e) {
+                last = new Chunk(null, 0, e);
+            } catch (RuntimeException e) {
+                last = new Chunk(null, 0, new IOException(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            chunks.add(last);
+        }
+
+        private void writeTo(OutputStream os) throws IOException, InterruptedException {
+            while (true) {
+                final Chunk chunk = chunks.take();
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (chunk == END) {
+                    return;
+                }
+                os.write(chunk.data, 0, chunk.length);
+                freeChunks.release();
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] data;
+        private final int length;
+        private final IOException error;
+
+        private Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.shell.PathData;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementation of <code>ls [-d] [-h] [-R] [-limit n [-page p]]</code> with the same output as Hadoop's <code>ls</code>.
+ * <pre>
+ *  -R         recursive listing
+ *  -limit n   prints at most n entries
+ *  -page p    prints p-th page of n entries (starting from 1), requires -limit
+ * </pre>
+ * Without these options every loaded directory listing is passed to the listing listener (eg. to fill the metadata cache).
+ * <p>
+ * With these options the listing is streamed - directories are loaded page by page without block locations
+ * (by {@link DFSClient#listPaths(String, byte[], boolean)}, Hadoop 2.6 has no <code>listStatusIterator</code>, other file systems are listed at once),
+ * only a window of entries is held in memory and the listing stops as soon as the limit is reached.
+ * Entries are printed in the order returned by the file system (sorted by name on HDFS), column widths are adjusted per window
+ * and there is no <code>Found n items</code> header.
+ *
+ * @author Vitasek L.
+ */
+public class ListCommand extends NativeCommand {
+
+    public static final String NAME = "ls";
+
+    private static final int WINDOW_SIZE = 1000;
+
+    private final BiConsumer<PathData, FileStatus[]> listingListener;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+    private boolean dirRecurse;
+    private boolean humanReadable;
+    private boolean recursive;
+    private long limit;
+    private long offset;
+    private boolean streaming;
+
+    private final List<FileStatus> window = new ArrayList<>();
+    private final List<String> windowPaths = new ArrayList<>();
+    private long seen;
+    private long printed;
+
+    private int maxRepl = 3, maxLen = 10, maxOwner = 0, maxGroup = 0;
+    private String lineFormat;
+
+    public ListCommand(Configuration conf, PrintStream out, PrintStream err, BiConsumer<PathData, FileStatus[]> listingListener) {
+        super(NAME, conf, out, err);
+        this.listingListener = listingListener;
+    }
+
+    /**
+     * @return true if the options are supported by this implementation
+     */
+    public static boolean isSupported(String[] args) {
+        for (String arg : args) {
+            if ("--".equals(arg)) {
+                return true;
+            }
+            if (arg.startsWith("-") && !"-d".equals(arg) && !"-h".equals(arg) && !"-R".equals(arg)
+                    && !"-limit".equals(arg) && !"-page".equals(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        dirRecurse = !popFlag(args, "-d");
+        humanReadable = popFlag(args, "-h");
+        recursive = popFlag(args, "-R");
+        final boolean limited = hasOption(args.toArray(new String[0]), "-limit");
+        limit = popIntOption(args, "-limit", Integer.MAX_VALUE, 1);
+        final int page = popIntOption(args, "-page", 1, 1);
+        if (page > 1 && !limited) {
+            throw new IllegalArgumentException("Option -page requires -limit");
+        }
+        offset = (long) (page - 1) * limit;
+        streaming = recursive || limited;
+        checkNoOtherOptions(args);
+        if (args.isEmpty()) {
+            args.add(Path.CUR_DIR);
+        }
+    }
+
+    @Override
+    protected void processPathArgument(PathData item) throws IOException {
+        if (streaming) {
+            streamPathArgument(item);
+            return;
+        }
+        if (dirRecurse && item.stat.isDirectory()) {
+            final FileStatus[] children = item.fs.listStatus(item.path);
+            listingListener.accept(item, children);
+            Arrays.sort(children);
+            if (children.length != 0) {
+                out.println("Found " + children.length + " items");
+            }
+            adjustColumnWidths(children);
+            for (FileStatus child : children) {
+                printStatus(child, childPathString(item, child));
+            }
+        } else {
+            adjustColumnWidths(item.stat);
+            printStatus(item.stat, item.toString());
+        }
+    }
+
+    private void streamPathArgument(PathData item) throws IOException {
+        if (!dirRecurse || !item.stat.isDirectory()) {
+            add(item.stat, item.toString());
+            flushWindow();
+            return;
+        }
+        final Deque<Listing> stack = new ArrayDeque<>();
+        stack.push(new Listing(listStatusIterator(item.fs, item.path), item.toString()));
+        while (!stack.isEmpty() && !isLimitReached()) {
+            final Listing listing = stack.peek();
+            final FileStatus child;
+            try {
+                if (!listing.iterator.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                child = listing.iterator.next();
+            } catch (IOException e) {
+                displayError(e);
+                stack.pop();
+                continue;
+            }
+            final String childString = childPathString(listing.pathString, child);
+            add(child, childString);
+            if (recursive && child.isDirectory()) {
+                //depth first as Hadoop's ls -R - the directory is printed before its content
+                flushWindow();
+                try {
+                    stack.push(new Listing(listStatusIterator(item.fs, child.getPath()), childString));
+                } catch (IOException e) {
+                    displayError(e);
+                }
+            }
+        }
+        flushWindow();
+    }
+
+    private boolean isLimitReached() {
+        return printed >= limit;
+    }
+
+    private void add(FileStatus stat, String pathString) {
+        if (seen++ < offset || isLimitReached()) {
+            return;
+        }
+        printed++;
+        window.add(stat);
+        windowPaths.add(pathString);
+        if (window.size() >= WINDOW_SIZE) {
+            flushWindow();
+        }
+    }
+
+    private void flushWindow() {
+        if (window.isEmpty()) {
+            return;
+        }
+        adjustColumnWidths(window.toArray(new FileStatus[window.size()]));
+        for (int i = 0; i < window.size(); i++) {
+            printStatus(window.get(i), windowPaths.get(i));
+        }
+        window.clear();
+        windowPaths.clear();
+    }
+
+    private static RemoteIterator<FileStatus> listStatusIterator(FileSystem fs, Path path) throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+            return new DfsListing((DistributedFileSystem) fs, path);
+        }
+        final Iterator<FileStatus> iterator = Arrays.asList(fs.listStatus(path)).iterator();
+        return new RemoteIterator<FileStatus>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public FileStatus next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    private static final class Listing {
+        private final RemoteIterator<FileStatus> iterator;
+        private final String pathString;
+
+        private Listing(RemoteIterator<FileStatus> iterator, String pathString) {
+            this.iterator = iterator;
+            this.pathString = pathString;
+        }
+    }
+
+    /**
+     * HDFS directory listing loaded page by page (<code>dfs.ls.limit</code> entries) on demand.
+     */
+    private static final class DfsListing implements RemoteIterator<FileStatus> {
+        private final DistributedFileSystem fs;
+        private final Path path;
+        private final String src;
+        private DirectoryListing page;
+        private int index;
+
+        private DfsListing(DistributedFileSystem fs, Path path) throws IOException {
+            this.fs = fs;
+            this.path = fs.makeQualified(path);
+            this.src = this.path.toUri().getPath();
+            this.page = load(HdfsFileStatus.EMPTY_NAME);
+        }
+
+        private DirectoryListing load(byte[] startAfter) throws IOException {
+            final DirectoryListing listing = fs.getClient().listPaths(src, startAfter, false);
+            if (listing == null) {
+                throw new FileNotFoundException("File " + path + " does not exist.");
+            }
+            return listing;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            while (index >= page.getPartialListing().length) {
+                if (!page.hasMore()) {
+                    return false;
+                }
+                page = load(page.getLastName());
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public FileStatus next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more entries in " + path);
+            }
+            return page.getPartialListing()[index++].makeQualified(fs.getUri(), path);
+        }
+    }
+
+    private void printStatus(FileStatus stat, String pathString) {
+        final String line = String.format(lineFormat,
+                (stat.isDirectory() ? "d" : "-"),
+                stat.getPermission() + (stat.getPermission().getAclBit() ? "+" : " "),
+                (stat.isFile() ? stat.getReplication() : "-"),
+                stat.getOwner(),
+                stat.getGroup(),
+                formatSize(stat.getLen(), humanReadable),
+                dateFormat.format(new Date(stat.getModificationTime())),
+                pathString
+        );
+        out.println(line);
+    }
+
+    private void adjustColumnWidths(FileStatus... items) {
+        for (FileStatus stat : items) {
+            maxRepl = maxLength(maxRepl, stat.getReplication());
+            maxLen = maxLength(maxLen, stat.getLen());
+            maxOwner = maxLength(maxOwner, stat.getOwner());
+            maxGroup = maxLength(maxGroup, stat.getGroup());
+        }
+        lineFormat = "%s%s" + // permission string
+                "%" + maxRepl + "s " +
+                ((maxOwner > 0) ? "%-" + maxOwner + "s " : "%s") +
+                ((maxGroup > 0) ? "%-" + maxGroup + "s " : "%s") +
+                "%" + maxLen + "s " +
+                "%s %s"; // mod time & path
+    }
+
+    private static int maxLength(int n, Object value) {
+        return Math.max(n, (value != null) ? String.valueOf(value).length() : 0);
+    }
+}
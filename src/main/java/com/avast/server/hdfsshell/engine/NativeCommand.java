@@ -0,0 +1,325 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.PathNotFoundException;
+import org.apache.hadoop.fs.shell.PathData;
+import org.apache.hadoop.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base for commands implemented directly in HDFS Shell instead of Hadoop's {@link org.apache.hadoop.fs.shell.Command}.
+ * It follows the same life cycle (options, arguments expansion, processing of path arguments), error reporting and exit codes,
+ * so the output is the same as for the original Hadoop commands.
+ * Errors can be reported from any thread.
+ *
+ * @author Vitasek L.
+ */
+public abstract class NativeCommand {
+
+    /**
+     * Thread count of commands walking the directory tree (du, count, find, chmod, chown, chgrp, setrep).
+     */
+    public static final String THREADS_OPTION = "-P";
+    /**
+     * Thread count of commands transferring data (get, put, getmerge), the same as <code>put -t</code> of later Hadoop versions.
+     */
+    public static final String TRANSFER_THREADS_OPTION = "-t";
+
+    protected final String name;
+    protected final Configuration conf;
+    protected final PrintStream out;
+    protected final PrintStream err;
+
+    private final AtomicInteger numErrors = new AtomicInteger();
+    private volatile Semaphore callPermits;
+
+    protected NativeCommand(String name, Configuration conf, PrintStream out, PrintStream err) {
+        this.name = name;
+        this.conf = conf;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * @param arguments command arguments
+     * @return 0 on success, 1 if any error occurred, -1 for invalid arguments
+     */
+    public int run(String... arguments) {
+        final LinkedList<String> args = new LinkedList<>(Arrays.asList(arguments));
+        try {
+            processOptions(args);
+            processArguments(args);
+        } catch (IllegalArgumentException e) {
+            displayError(e.getMessage());
+            return -1;
+        } catch (IOException e) {
+            displayError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            displayError("Interrupted");
+        }
+        return numErrors.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Removes recognized options from the list, the rest are the arguments.
+     *
+     * @throws IllegalArgumentException for invalid or unknown options
+     */
+    protected abstract void processOptions(LinkedList<String> args);
+
+    protected void processArguments(LinkedList<String> args) throws IOException, InterruptedException {
+        for (String arg : args) {
+            try {
+                for (PathData item : expandArgument(arg)) {
+                    try {
+                        processPathArgument(item);
+                    } catch (IOException e) {
+                        displayError(e);
+                    }
+                }
+            } catch (IOException e) {
+                displayError(e);
+            }
+        }
+    }
+
+    protected void processPathArgument(PathData item) throws IOException, InterruptedException {
+    }
+
+    protected PathData[] expandArgument(String arg) throws IOException {
+        final PathData[] items = PathData.expandAsGlob(arg, conf);
+        if (items.length == 0) {
+            throw new PathNotFoundException(arg);
+        }
+        for (PathData item : items) {
+            if (!item.exists) {
+                throw new PathNotFoundException(item.toString());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Creates the pool for parallel walking of the tree, its blocking calls are limited by {@link #blocking(IOCallable)}.
+     */
+    protected ForkJoinPool newWorkerPool(int threads) {
+        callPermits = new Semaphore(threads);
+        return new ForkJoinPool(threads);
+    }
+
+    /**
+     * Makes a blocking call (NameNode RPC) from a worker of the pool as a {@link ForkJoinPool.ManagedBlocker},
+     * so the pool can run a spare worker meanwhile instead of waiting for the RPC with the whole parallelism.
+     * Waiting for one of the <code>threads</code> permits is not compensated, so the number of concurrent calls
+     * (and workers) stays bounded.
+     */
+    protected <T> T blocking(IOCallable<T> call) throws IOException {
+        final Semaphore permits = callPermits;
+        final CallBlocker<T> blocker = new CallBlocker<>(call);
+        try {
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+        }
+        if (blocker.error != null) {
+            throw blocker.error;
+        }
+        return blocker.result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumErrors() {
+        return numErrors.get();
+    }
+
+    public void displayError(Exception e) {
+        String errorMessage = e.getLocalizedMessage();
+        if (errorMessage == null) {
+            errorMessage = StringUtils.stringifyException(e);
+        } else {
+            errorMessage = errorMessage.split("\n", 2)[0];
+        }
+        displayError(errorMessage);
+    }
+
+    public void displayError(String message) {
+        numErrors.incrementAndGet();
+        displayWarning(message);
+    }
+
+    public void displayWarning(String message) {
+        err.println(name + ": " + message);
+    }
+
+    /**
+     * @return the same string Hadoop shell displays for a child of the given (command line) path
+     */
+    protected static String childPathString(PathData parent, FileStatus child) {
+        return childPathString(parent.toString(), child);
+    }
+
+    protected static String childPathString(String parentString, FileStatus child) {
+        final String basename = child.getPath().getName();
+        if (".".equals(parentString)) {
+            return basename;
+        }
+        return parentString + (parentString.endsWith("/") ? "" : "/") + basename;
+    }
+
+    protected static String formatSize(long size, boolean humanReadable) {
+        return humanReadable ? StringUtils.TraditionalBinaryPrefix.long2String(size, "", 1) : String.valueOf(size);
+    }
+
+    /**
+     * @return eg. <code>12 files, 1.5 G in 10.2 s (150.6 M/s)</code>
+     */
+    protected static String formatTransfer(long files, long bytes, long nanos) {
+        final double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("%d files, %s in %.1f s (%s/s)", files, formatSize(bytes, true), seconds, formatSize((long) (bytes / seconds), true));
+    }
+
+    /**
+     * @return true if the option is present between the arguments (before <code>--</code>)
+     */
+    public static boolean hasOption(String[] args, String option) {
+        for (String arg : args) {
+            if ("--".equals(arg)) {
+                return false;
+            }
+            if (option.equals(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static boolean popFlag(LinkedList<String> args, String option) {
+        final Iterator<String> iterator = args.iterator();
+        while (iterator.hasNext()) {
+            final String arg = iterator.next();
+            if ("--".equals(arg)) {
+                return false;
+            }
+            if (option.equals(arg)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the option and its value from arguments.
+     *
+     * @return the value of the option or null if the option is not present
+     */
+    protected static String popOptionValue(LinkedList<String> args, String option) {
+        final Iterator<String> iterator = args.iterator();
+        while (iterator.hasNext()) {
+            final String arg = iterator.next();
+            if ("--".equals(arg)) {
+                return null;
+            }
+            if (option.equals(arg)) {
+                iterator.remove();
+                if (!iterator.hasNext()) {
+                    throw new IllegalArgumentException("Missing value for option " + option);
+                }
+                final String value = iterator.next();
+                iterator.remove();
+                return value;
+            }
+        }
+        return null;
+    }
+
+    protected static int popIntOption(LinkedList<String> args, String option, int defaultValue, int minValue) {
+        final String value = popOptionValue(args, option);
+        if (value == null) {
+            return defaultValue;
+        }
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option " + option + ": " + value);
+        }
+        if (result < minValue) {
+            throw new IllegalArgumentException("Value for option " + option + " must be at least " + minValue);
+        }
+        return result;
+    }
+
+    /**
+     * Checks that all options were recognized and removes the <code>--</code> separator.
+     */
+    protected static void checkNoOtherOptions(LinkedList<String> args) {
+        final Iterator<String> iterator = args.iterator();
+        while (iterator.hasNext()) {
+            final String arg = iterator.next();
+            if ("--".equals(arg)) {
+                iterator.remove();
+                return;
+            }
+            if (arg.startsWith("-") && arg.length() > 1) {
+                throw new IllegalArgumentException("Illegal option " + arg);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    protected interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    private static final class CallBlocker<T> implements ForkJoinPool.ManagedBlocker {
+        private final IOCallable<T> call;
+        private T result;
+        private IOException error;
+        private boolean done;
+
+        private CallBlocker(IOCallable<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                result = call.call();
+            } catch (IOException e) {
+                error = e;
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.permission.ChmodParser;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parallel implementation of <code>chmod</code>, <code>chown</code>, <code>chgrp</code> and <code>setrep</code>.
+ * Directories are listed and the files are changed by concurrent NameNode calls in a work-stealing {@link ForkJoinPool},
+ * paths which already have the requested permission/owner are skipped without a call.
+ * Errors do not stop the command, only the first {@value #MAX_REPORTED_ERRORS} are printed, the rest is counted.
+ * The progress is printed to stderr every {@value #PROGRESS_INTERVAL_MILLIS} ms, the summary at the end if the command took longer or failed.
+ * <code>setrep -w</code> checks the replication of all pending files at once every {@value #REPLICATION_CHECK_MILLIS} ms,
+ * so the total waiting time is given by the slowest file, not by the sum of all files.
+ * <pre>
+ * chmod -P threads [-R] MODE[,MODE]... | OCTALMODE PATH...
+ * chown -P threads [-R] [OWNER][:[GROUP]] PATH...
+ * chgrp -P threads [-R] GROUP PATH...
+ * setrep -P threads [-R] [-w] REPLICATION PATH...
+ * </pre>
+ *
+ * @author Vitasek L.
+ */
+public class ParallelAttributeCommand extends NativeCommand {
+
+    static final int BATCH_SIZE = 32;
+    static final int MAX_REPORTED_ERRORS = 100;
+    static final long PROGRESS_INTERVAL_MILLIS = 5000;
+    static final long REPLICATION_CHECK_MILLIS = 10000;
+
+    // the same patterns as Hadoop's chown/chgrp
+    private static final String ALLOWED_CHARS = "[-_./@a-zA-Z0-9]";
+    private static final Pattern CHOWN_PATTERN = Pattern.compile("^\\s*(" + ALLOWED_CHARS + "+)?([:](" + ALLOWED_CHARS + "*))?\\s*$");
+    private static final Pattern CHGRP_PATTERN = Pattern.compile("^\\s*(" + ALLOWED_CHARS + "+)\\s*$");
+
+    public enum Mode {
+        CHMOD, CHOWN, CHGRP, SETREP
+    }
+
+    private final Mode mode;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Queue<PendingReplication> pendingReplications = new ConcurrentLinkedQueue<>();
+
+    private boolean recursive;
+    private boolean waitForReplication;
+    private ChmodParser chmodParser;
+    private String owner;
+    private String group;
+    private short replication;
+    private ForkJoinPool pool;
+    private boolean progressShown;
+
+    public ParallelAttributeCommand(Mode mode, Configuration conf, PrintStream out, PrintStream err) {
+        super(mode.name().toLowerCase(), conf, out, err);
+        this.mode = mode;
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        final int threads = popIntOption(args, THREADS_OPTION, Runtime.getRuntime().availableProcessors(), 1);
+        //setrep -R is accepted for compatibility, directories are always processed recursively
+        recursive = popFlag(args, "-R") || mode == Mode.SETREP;
+        if (mode == Mode.SETREP) {
+            waitForReplication = popFlag(args, "-w");
+        }
+        checkNoOtherOptions(args);
+        if (args.size() < 2) {
+            throw new IllegalArgumentException("Not enough arguments: expected 2 but got " + args.size());
+        }
+        parseSpecification(args.removeFirst());
+        pool = newWorkerPool(threads);
+    }
+
+    private void parseSpecification(String spec) {
+        switch (mode) {
+            case CHMOD:
+                try {
+                    chmodParser = new ChmodParser(spec);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("chmod : mode '" + spec + "' does not match the expected pattern.");
+                }
+                break;
+            case CHOWN:
+                final Matcher chownMatcher = CHOWN_PATTERN.matcher(spec);
+                if (!chownMatcher.matches()) {
+                    throw new IllegalArgumentException("'" + spec + "' does not match expected pattern for [owner][:group].");
+                }
+                owner = chownMatcher.group(1);
+                group = chownMatcher.group(3);
+                if (group != null && group.isEmpty()) {
+                    group = null;
+                }
+                if (owner == null && group == null) {
+                    throw new IllegalArgumentException("'" + spec + "' does not specify owner or group.");
+                }
+                break;
+            case CHGRP:
+                final Matcher chgrpMatcher = CHGRP_PATTERN.matcher(spec);
+                if (!chgrpMatcher.matches()) {
+                    throw new IllegalArgumentException("'" + spec + "' does not match expected pattern for group");
+                }
+                group = chgrpMatcher.group(1);
+                break;
+            case SETREP:
+                try {
+                    replication = Short.parseShort(spec);
+                } catch (NumberFormatException e) {
+                    replication = 0;
+                }
+                if (replication < 1) {
+                    throw new IllegalArgumentException("Illegal replication, a positive integer expected");
+                }
+                break;
+        }
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            super.processArguments(args);
+            waitForReplication();
+        } finally {
+            pool.shutdownNow();
+        }
+        if (progressShown || failed.get() > 0) {
+            displayWarning(String.format("%s in %.1f s", formatProgress(), (System.nanoTime() - start) / 1e9)
+                    + (failed.get() > MAX_REPORTED_ERRORS ? ", only the first " + MAX_REPORTED_ERRORS + " errors were printed" : ""));
+        }
+    }
+
+    @Override
+    protected void processPathArgument(PathData item) throws IOException, InterruptedException {
+        runWithProgress(new PathTask(item.fs, item.stat, item.toString()));
+    }
+
+    @Override
+    public void displayError(String message) {
+        if (failed.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            super.displayError(message);
+        }
+    }
+
+    private void runWithProgress(ForkJoinTask<?> task) throws IOException, InterruptedException {
+        pool.execute(task);
+        while (true) {
+            try {
+                task.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                progressShown = true;
+                displayWarning(formatProgress());
+            } catch (ExecutionException e) {
+                throw new IOException(task + ": " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private String formatProgress() {
+        return String.format("%d paths processed, %d changed, %d failed", processed.get(), changed.get(), failed.get());
+    }
+
+    private void apply(FileSystem fs, FileStatus status, String pathString) {
+        processed.incrementAndGet();
+        try {
+            if (applyChange(fs, status, pathString)) {
+                changed.incrementAndGet();
+            }
+        } catch (IOException e) {
+            displayError(e);
+        }
+    }
+
+    /**
+     * @return true if the path was changed
+     */
+    private boolean applyChange(FileSystem fs, FileStatus status, String pathString) throws IOException {
+        switch (mode) {
+            case CHMOD:
+                final short permission = chmodParser.applyNewPermission(status);
+                if (status.getPermission().toShort() == permission) {
+                    return false;
+                }
+                try {
+                    blocking(() -> {
+                        fs.setPermission(status.getPath(), new FsPermission(permission));
+                        return null;
+                    });
+                } catch (IOException e) {
+                    throw new IOException("changing permissions of '" + pathString + "': " + e.getMessage());
+                }
+                return true;
+            case CHOWN:
+            case CHGRP:
+                if ((owner == null || owner.equals(status.getOwner())) && (group == null || group.equals(status.getGroup()))) {
+                    return false;
+                }
+                try {
+                    blocking(() -> {
+                        fs.setOwner(status.getPath(), owner, group);
+                        return null;
+                    });
+                } catch (IOException e) {
+                    throw new IOException("changing ownership of '" + pathString + "': " + e.getMessage());
+                }
+                return true;
+            case SETREP:
+                if (!status.isFile()) {
+                    return false;
+                }
+                if (!blocking(() -> fs.setReplication(status.getPath(), replication))) {
+                    throw new IOException("Could not set replication for: " + pathString);
+                }
+                out.println("Replication " + replication + " set: " + pathString);
+                if (waitForReplication) {
+                    pendingReplications.add(new PendingReplication(fs, status, pathString));
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks the replication of all pending files in parallel until all of them are replicated.
+     */
+    private void waitForReplication() throws InterruptedException {
+        if (pendingReplications.isEmpty()) {
+            return;
+        }
+        err.println("WARNING: the waiting time may be long for DECREASING the number of replications.");
+        final int total = pendingReplications.size();
+        List<PendingReplication> pending = new ArrayList<>(pendingReplications);
+        while (true) {
+            final List<ForkJoinTask<Boolean>> checks = new ArrayList<>(pending.size());
+            for (PendingReplication file : pending) {
+                checks.add(pool.submit(file::isDone));
+            }
+            final List<PendingReplication> notReplicated = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                if (checks.get(i).join()) {
+                    out.println("Waiting for " + pending.get(i).pathString + " ... done");
+                } else {
+                    notReplicated.add(pending.get(i));
+                }
+            }
+            pending = notReplicated;
+            if (pending.isEmpty()) {
+                return;
+            }
+            progressShown = true;
+            displayWarning(String.format("%d of %d files replicated", total - pending.size(), total));
+            Thread.sleep(REPLICATION_CHECK_MILLIS);
+        }
+    }
+
+    /**
+     * Applies the change to the path and (recursively) to its children.
+     */
+    private final class PathTask extends RecursiveAction {
+        private final FileSystem fs;
+        private final FileStatus status;
+        private final String pathString;
+
+        private PathTask(FileSystem fs, FileStatus status, String pathString) {
+            this.fs = fs;
+            this.status = status;
+            this.pathString = pathString;
+        }
+
+        @Override
+        protected void compute() {
+            apply(fs, status, pathString);
+            if (!recursive || !status.isDirectory()) {
+                return;
+            }
+            final FileStatus[] children;
+            try {
+                children = blocking(() -> fs.listStatus(status.getPath()));
+            } catch (IOException e) {
+                displayError(e);
+                return;
+            }
+            final List<RecursiveAction> subtasks = new ArrayList<>();
+            final List<FileStatus> files = new ArrayList<>(Math.min(children.length, BATCH_SIZE));
+            for (FileStatus child : children) {
+                if (child.isDirectory()) {
+                    subtasks.add(new PathTask(fs, child, childPathString(pathString, child)));
+                } else {
+                    files.add(child);
+                    if (files.size() == BATCH_SIZE) {
+                        subtasks.add(new BatchTask(fs, pathString, new ArrayList<>(files)));
+                        files.clear();
+                    }
+                }
+            }
+            if (!files.isEmpty()) {
+                subtasks.add(new BatchTask(fs, pathString, files));
+            }
+            ForkJoinTask.invokeAll(subtasks);
+        }
+
+        @Override
+        public String toString() {
+            return pathString;
+        }
+    }
+
+    /**
+     * Applies the change to files of one directory.
+     */
+    private final class BatchTask extends RecursiveAction {
+        private final FileSystem fs;
+        private final String parentString;
+        private final List<FileStatus> files;
+
+        private BatchTask(FileSystem fs, String parentString, List<FileStatus> files) {
+            this.fs = fs;
+            this.parentString = parentString;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            for (FileStatus file : files) {
+                apply(fs, file, childPathString(parentString, file));
+            }
+        }
+    }
+
+    private final class PendingReplication {
+        private final FileSystem fs;
+        private final FileStatus status;
+        private final String pathString;
+
+        private PendingReplication(FileSystem fs, FileStatus status, String pathString) {
+            this.fs = fs;
+            this.status = status;
+            this.pathString = pathString;
+        }
+
+        /**
+         * @return true if all blocks have the requested number of replicas or the check failed
+         */
+        private boolean isDone() {
+            try {
+                for (BlockLocation location : blocking(() -> fs.getFileBlockLocations(status, 0, status.getLen()))) {
+                    if (location.getHosts().length != replication) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                displayError(e);
+                return true;
+            }
+        }
+    }
+}
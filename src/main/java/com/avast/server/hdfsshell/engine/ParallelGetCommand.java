@@ -0,0 +1,205 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathExistsException;
+import org.apache.hadoop.fs.PathIsNotDirectoryException;
+import org.apache.hadoop.fs.PathNotFoundException;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Parallel implementation of <code>get</code> and <code>copyToLocal</code>.
+ * <pre>
+ * get -t threads [-p] src ... localdst
+ *  -t threads   number of files (or ranges of files) downloaded concurrently
+ *  -p           preserve access and modification times and the mode
+ * </pre>
+ * Large files are read in block aligned ranges (each range can be served by a different DataNode), every range by one seek
+ * and a sequential read, and written at their offsets into a preallocated local <code>._COPYING_</code> file.
+ * Other files are copied as a plain stream. The <code>._COPYING_</code> file is renamed when it is complete.
+ * The aggregate throughput is printed at the end.
+ *
+ * @author Vitasek L.
+ */
+public class ParallelGetCommand extends ParallelTransferCommand {
+
+    private boolean preserve;
+
+    public ParallelGetCommand(String name, Configuration conf, PrintStream out, PrintStream err) {
+        super(name, conf, out, err);
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        processThreadsOption(args);
+        preserve = popFlag(args, "-p");
+        checkNoOtherOptions(args);
+        if (args.isEmpty()) {
+            throw new IllegalArgumentException("Not enough arguments: expected 1 but got 0");
+        }
+        if (args.size() == 1) {
+            args.add(Path.CUR_DIR);
+        }
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException {
+        final File dst = new File(args.removeLast());
+        final boolean dstIsDir = dst.isDirectory();
+        if (args.size() > 1 && !dstIsDir) {
+            throw dst.exists() ? new PathIsNotDirectoryException(dst.toString()) : new PathNotFoundException(dst.toString());
+        }
+        final File dstParent = dst.getAbsoluteFile().getParentFile();
+        if (!dst.exists() && dstParent != null && !dstParent.isDirectory()) {
+            throw new PathNotFoundException(dst.toString());
+        }
+        runTransfers("Downloaded", () -> {
+            for (String src : args) {
+                try {
+                    final PathData[] items = expandArgument(src);
+                    if (items.length > 1 && !dstIsDir) {
+                        throw new PathIsNotDirectoryException(dst.toString());
+                    }
+                    for (PathData item : items) {
+                        download(item.fs, item.stat, dstIsDir ? new File(dst, item.path.getName()) : dst);
+                    }
+                } catch (IOException e) {
+                    displayError(e);
+                }
+            }
+        });
+    }
+
+    private void download(FileSystem fs, FileStatus status, File target) throws IOException {
+        if (status.isDirectory()) {
+            if (target.exists() && !target.isDirectory()) {
+                displayError(new PathIsNotDirectoryException(target.toString()));
+                return;
+            }
+            if (!target.isDirectory() && !target.mkdirs()) {
+                displayError("`" + target + "': Cannot create the directory");
+                return;
+            }
+            final FileStatus[] children = fs.listStatus(status.getPath());
+            Arrays.sort(children);
+            for (FileStatus child : children) {
+                download(fs, child, new File(target, child.getPath().getName()));
+            }
+            return;
+        }
+        if (target.exists()) {
+            displayError(new PathExistsException(target.toString()));
+            return;
+        }
+        final long length = status.getLen();
+        final File tmp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + COPYING_SUFFIX);
+        if (!isSplittable(length, status.getBlockSize())) {
+            addTransfer(submit(() -> {
+                try (FSDataInputStream in = fs.open(status.getPath(), BUFFER_SIZE);
+                     OutputStream os = new FileOutputStream(tmp)) {
+                    copy(in, os);
+                }
+                complete(status, tmp, target);
+            }).exceptionally(e -> failed(e, () -> Files.deleteIfExists(tmp.toPath()))));
+            return;
+        }
+        final long rangeSize = rangeSize(length, status.getBlockSize());
+        final int rangeCount = (int) ((length + rangeSize - 1) / rangeSize);
+        final RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(tmp, "rw");
+            file.setLength(length);
+        } catch (IOException e) {
+            displayError(e);
+            return;
+        }
+        final FileChannel channel = file.getChannel();
+        final CompletableFuture<?>[] ranges = new CompletableFuture<?>[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            final long offset = i * rangeSize;
+            ranges[i] = submit(() -> readRange(fs, status.getPath(), offset, Math.min(rangeSize, length - offset), channel));
+        }
+        addTransfer(CompletableFuture.allOf(ranges).thenRun(() -> {
+            try {
+                file.close();
+                complete(status, tmp, target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).exceptionally(e -> failed(e, () -> {
+            file.close();
+            Files.deleteIfExists(tmp.toPath());
+        })));
+    }
+
+    private void readRange(FileSystem fs, Path path, long offset, long length, FileChannel channel) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (FSDataInputStream in = fs.open(path, BUFFER_SIZE)) {
+            in.seek(offset);
+            long position = offset;
+            final long end = offset + length;
+            while (position < end) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of file " + path);
+                }
+                final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                long writePosition = position;
+                while (byteBuffer.hasRemaining()) {
+                    writePosition += channel.write(byteBuffer, writePosition);
+                }
+                position += read;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream os) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            os.write(buffer, 0, read);
+        }
+    }
+
+    private void complete(FileStatus status, File tmp, File target) throws IOException {
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Failed to rename " + tmp + " to " + target);
+        }
+        if (preserve) {
+            Files.setLastModifiedTime(target.toPath(), FileTime.fromMillis(status.getModificationTime()));
+            Files.setAttribute(target.toPath(), "lastAccessTime", FileTime.fromMillis(status.getAccessTime()));
+            try {
+                Files.setPosixFilePermissions(target.toPath(), PosixFilePermissions.fromString(toPosixString(status.getPermission())));
+            } catch (UnsupportedOperationException e) {
+                //not a POSIX file system
+            }
+        }
+        transferred(status.getLen());
+    }
+
+    private static String toPosixString(FsPermission permission) {
+        return permission.getUserAction().SYMBOL + permission.getGroupAction().SYMBOL + permission.getOtherAction().SYMBOL;
+    }
+}
@@ -0,0 +1,207 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathExistsException;
+import org.apache.hadoop.fs.PathIsDirectoryException;
+import org.apache.hadoop.fs.PathIsNotDirectoryException;
+import org.apache.hadoop.fs.PathNotFoundException;
+import org.apache.hadoop.fs.shell.PathData;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Parallel implementation of <code>put</code> and <code>copyFromLocal</code>.
+ * <pre>
+ * put -t threads [-f] [-p] localsrc ... dst
+ *  -t threads   number of files (or parts of files) uploaded concurrently
+ *  -f           overwrite the destination if it already exists
+ *  -p           preserve access and modification times, ownership and the mode
+ * </pre>
+ * Files are written to a temporary <code>._COPYING_</code> file first and renamed when they are complete.
+ * Large files on HDFS are split into parts aligned to the block size, the parts are uploaded concurrently
+ * and joined by {@link DistributedFileSystem#concat(Path, Path[])}. The aggregate throughput is printed at the end.
+ *
+ * @author Vitasek L.
+ */
+public class ParallelPutCommand extends ParallelTransferCommand {
+
+    private boolean overwrite;
+    private boolean preserve;
+
+    public ParallelPutCommand(String name, Configuration conf, PrintStream out, PrintStream err) {
+        super(name, conf, out, err);
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        processThreadsOption(args);
+        overwrite = popFlag(args, "-f");
+        preserve = popFlag(args, "-p");
+        checkNoOtherOptions(args);
+        if (args.isEmpty()) {
+            throw new IllegalArgumentException("Not enough arguments: expected 1 but got 0");
+        }
+        if (args.size() == 1) {
+            args.add(Path.CUR_DIR);
+        }
+        if (args.subList(0, args.size() - 1).contains("-")) {
+            throw new IllegalArgumentException("Reading from stdin is not supported with " + TRANSFER_THREADS_OPTION);
+        }
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException {
+        final PathData dst = new PathData(args.removeLast(), conf);
+        final boolean dstIsDir = dst.exists && dst.stat.isDirectory();
+        if (args.size() > 1 && !dstIsDir) {
+            throw dst.exists ? new PathIsNotDirectoryException(dst.toString()) : new PathNotFoundException(dst.toString());
+        }
+        final Path dstPath = dst.fs.makeQualified(dst.path);
+        if (!dst.exists && dstPath.getParent() != null && !dst.fs.exists(dstPath.getParent())) {
+            throw new PathNotFoundException(dst.toString());
+        }
+        runTransfers("Uploaded", () -> {
+            for (String src : args) {
+                final File local = new File(src);
+                if (!local.exists()) {
+                    displayError(new PathNotFoundException(src));
+                    continue;
+                }
+                upload(dst.fs, local, dstIsDir ? new Path(dstPath, local.getName()) : dstPath);
+            }
+        });
+    }
+
+    private void upload(FileSystem fs, File local, Path target) throws IOException {
+        final FileStatus targetStatus = getFileStatus(fs, target);
+        if (local.isDirectory()) {
+            if (targetStatus != null && !targetStatus.isDirectory()) {
+                displayError(new PathIsNotDirectoryException(target.toString()));
+                return;
+            }
+            fs.mkdirs(target);
+            final File[] children = local.listFiles();
+            if (children == null) {
+                displayError("`" + local + "': Cannot list the directory");
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                upload(fs, child, new Path(target, child.getName()));
+            }
+            return;
+        }
+        if (targetStatus != null) {
+            if (targetStatus.isDirectory()) {
+                displayError(new PathIsDirectoryException(target.toString()));
+                return;
+            }
+            if (!overwrite) {
+                displayError(new PathExistsException(target.toString()));
+                return;
+            }
+        }
+        final long length = local.length();
+        final long blockSize = fs.getDefaultBlockSize(target);
+        if (fs instanceof DistributedFileSystem && isSplittable(length, blockSize)) {
+            addTransfer(uploadInParts((DistributedFileSystem) fs, local, length, blockSize, target));
+        } else {
+            final Path tmp = copyingPath(target, 0);
+            addTransfer(submit(() -> {
+                writePart(fs, local, 0, length, tmp, blockSize);
+                complete(fs, local, length, tmp, target);
+            }).exceptionally(e -> failed(e, () -> fs.delete(tmp, false))));
+        }
+    }
+
+    /**
+     * All parts but the last one have the size of a multiple of the block size (concat requires full blocks).
+     */
+    private CompletableFuture<Void> uploadInParts(DistributedFileSystem fs, File local, long length, long blockSize, Path target) {
+        final long partSize = rangeSize(length, blockSize);
+        final int partCount = (int) ((length + partSize - 1) / partSize);
+        final Path[] parts = new Path[partCount];
+        final CompletableFuture<?>[] partUploads = new CompletableFuture<?>[partCount];
+        for (int i = 0; i < partCount; i++) {
+            final long offset = i * partSize;
+            final Path part = parts[i] = copyingPath(target, i);
+            partUploads[i] = submit(() -> writePart(fs, local, offset, Math.min(partSize, length - offset), part, blockSize));
+        }
+        return CompletableFuture.allOf(partUploads).thenRun(() -> {
+            try {
+                fs.concat(parts[0], Arrays.copyOfRange(parts, 1, partCount));
+                complete(fs, local, length, parts[0], target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).exceptionally(e -> failed(e, () -> {
+            for (Path part : parts) {
+                fs.delete(part, false);
+            }
+        }));
+    }
+
+    private void writePart(FileSystem fs, File local, long offset, long length, Path part, long blockSize) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        try (FileChannel in = FileChannel.open(local.toPath(), StandardOpenOption.READ);
+             FSDataOutputStream os = fs.create(part, true, BUFFER_SIZE, fs.getDefaultReplication(part), blockSize)) {
+            in.position(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, remaining));
+                final int read = in.read(byteBuffer);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of file " + local);
+                }
+                os.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private void complete(FileSystem fs, File local, long length, Path tmp, Path target) throws IOException {
+        if (overwrite) {
+            fs.delete(target, false);
+        }
+        if (!fs.rename(tmp, target)) {
+            throw new IOException("Failed to rename " + tmp + " to " + target);
+        }
+        if (preserve) {
+            final FileStatus localStatus = FileSystem.getLocal(conf).getFileStatus(new Path(local.toURI()));
+            fs.setTimes(target, localStatus.getModificationTime(), localStatus.getAccessTime());
+            fs.setOwner(target, localStatus.getOwner(), localStatus.getGroup());
+            fs.setPermission(target, localStatus.getPermission());
+        }
+        transferred(length);
+    }
+
+    private static Path copyingPath(Path target, int part) {
+        return new Path(target.getParent(), target.getName() + COPYING_SUFFIX + (part == 0 ? "" : "." + part));
+    }
+
+    private static FileStatus getFileStatus(FileSystem fs, Path path) throws IOException {
+        try {
+            return fs.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+}
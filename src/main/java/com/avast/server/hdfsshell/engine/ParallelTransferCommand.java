@@ -0,0 +1,124 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base for commands copying files between HDFS and the local file system with <code>-t threads</code>.
+ * Transfers are planned by the command thread and run in a fixed thread pool, the aggregate throughput is printed at the end.
+ *
+ * @author Vitasek L.
+ */
+public abstract class ParallelTransferCommand extends NativeCommand {
+
+
+    protected static final String COPYING_SUFFIX = "._COPYING_";
+    protected static final int BUFFER_SIZE = 128 * 1024;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+
+    protected int threads;
+    private ExecutorService executor;
+
+    protected ParallelTransferCommand(String name, Configuration conf, PrintStream out, PrintStream err) {
+        super(name, conf, out, err);
+    }
+
+    protected void processThreadsOption(LinkedList<String> args) {
+        threads = popIntOption(args, TRANSFER_THREADS_OPTION, Runtime.getRuntime().availableProcessors(), 1);
+    }
+
+    /**
+     * Runs the planner (which adds transfers) and waits for all the transfers.
+     *
+     * @param action eg. <code>Uploaded</code>, the first word of the summary
+     */
+    protected void runTransfers(String action, TransferPlanner planner) throws IOException {
+        final long start = System.nanoTime();
+        executor = Executors.newFixedThreadPool(threads);
+        try {
+            planner.plan();
+            for (CompletableFuture<Void> transfer : transfers) {
+                transfer.join();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.println(action + " " + formatTransfer(files.get(), bytes.get(), System.nanoTime() - start));
+    }
+
+    protected void addTransfer(CompletableFuture<Void> transfer) {
+        transfers.add(transfer);
+    }
+
+    protected CompletableFuture<Void> submit(IOTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    protected void transferred(long length) {
+        files.incrementAndGet();
+        bytes.addAndGet(length);
+    }
+
+    /**
+     * Reports the failure of a transfer and removes its temporary files.
+     */
+    protected Void failed(Throwable e, IOTask cleanup) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Exception) {
+            displayError((Exception) cause);
+        } else {
+            displayError(String.valueOf(cause));
+        }
+        try {
+            cleanup.run();
+        } catch (IOException ignored) {
+            //best effort
+        }
+        return null;
+    }
+
+    /**
+     * @return size of the ranges a file is split to - a multiple of the block size, at most one range per thread
+     */
+    protected long rangeSize(long length, long blockSize) {
+        final long blocks = (length + blockSize - 1) / blockSize;
+        return ((blocks + threads - 1) / threads) * blockSize;
+    }
+
+    protected boolean isSplittable(long length, long blockSize) {
+        return threads > 1 && blockSize > 0 && length >= 2 * blockSize;
+    }
+
+    @FunctionalInterface
+    protected interface IOTask {
+        void run() throws IOException;
+    }
+
+    @FunctionalInterface
+    protected interface TransferPlanner {
+        void plan() throws IOException;
+    }
+}
@@ -0,0 +1,187 @@
+package com.avast.server.hdfsshell.engine;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.shell.PathData;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel implementation of <code>du</code>, <code>dus</code> and <code>count</code>.
+ * The directory tree is walked by concurrent <code>listStatus</code> calls in a work-stealing {@link ForkJoinPool},
+ * the partial results are summed when the subtasks are joined, so there is no shared state to lock.
+ * Subdirectories of directories with only a few entries are summarized by a single <code>getContentSummary</code> call each
+ * instead of being walked, so every directory costs one NameNode call.
+ * The output has the same format as the original Hadoop commands.
+ *
+ * @author Vitasek L.
+ */
+public class ParallelUsageCommand extends NativeCommand {
+
+    public static final String THRESHOLD_OPTION = "-T";
+    public static final int DEFAULT_THRESHOLD = 16;
+
+    public enum Mode {
+        DU, DUS, COUNT
+    }
+
+    private final Mode mode;
+
+    private int threshold;
+    private boolean humanReadable;
+    private boolean summary;
+    private boolean showQuotas;
+    private ForkJoinPool pool;
+
+    public ParallelUsageCommand(Mode mode, Configuration conf, PrintStream out, PrintStream err) {
+        super(mode.name().toLowerCase(), conf, out, err);
+        this.mode = mode;
+    }
+
+    @Override
+    protected void processOptions(LinkedList<String> args) {
+        final int threads = popIntOption(args, THREADS_OPTION, Runtime.getRuntime().availableProcessors(), 1);
+        threshold = popIntOption(args, THRESHOLD_OPTION, DEFAULT_THRESHOLD, 0);
+        humanReadable = popFlag(args, "-h");
+        if (mode == Mode.COUNT) {
+            showQuotas = popFlag(args, "-q");
+        } else {
+            summary = popFlag(args, "-s") || mode == Mode.DUS;
+        }
+        checkNoOtherOptions(args);
+        if (args.isEmpty()) {
+            args.add(Path.CUR_DIR);
+        }
+        if (mode == Mode.DUS) {
+            displayWarning("DEPRECATED: Please use 'du -s' instead.");
+        }
+        pool = newWorkerPool(threads);
+    }
+
+    @Override
+    protected void processArguments(LinkedList<String> args) throws IOException, InterruptedException {
+        try {
+            super.processArguments(args);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    protected void processPathArgument(PathData item) throws IOException {
+        if (mode == Mode.COUNT) {
+            final ContentSummary summary = showQuotas ? item.fs.getContentSummary(item.path) : usageOf(item.fs, item.stat).toContentSummary();
+            out.println(summary.toString(showQuotas, humanReadable) + item);
+            return;
+        }
+        final List<String[]> rows = new ArrayList<>();
+        if (!summary && item.stat.isDirectory()) {
+            // go one level deep on dirs from cmdline
+            final FileStatus[] children = item.fs.listStatus(item.path);
+            Arrays.sort(children);
+            final List<ForkJoinTask<Usage>> tasks = new ArrayList<>(children.length);
+            for (FileStatus child : children) {
+                tasks.add(pool.submit(new UsageTask(item.fs, child, children.length < threshold)));
+            }
+            for (int i = 0; i < children.length; i++) {
+                rows.add(new String[]{formatSize(tasks.get(i).join().length, humanReadable), childPathString(item, children[i])});
+            }
+        } else {
+            rows.add(new String[]{formatSize(usageOf(item.fs, item.stat).length, humanReadable), item.toString()});
+        }
+        printTable(rows);
+    }
+
+    private Usage usageOf(FileSystem fs, FileStatus status) {
+        return pool.invoke(new UsageTask(fs, status, false));
+    }
+
+    private void printTable(List<String[]> rows) {
+        int sizeWidth = 0;
+        for (String[] row : rows) {
+            sizeWidth = Math.max(sizeWidth, row[0].length());
+        }
+        final String format = "%-" + Math.max(sizeWidth, 1) + "s  %s";
+        for (String[] row : rows) {
+            out.println(String.format(format, (Object[]) row));
+        }
+    }
+
+    private final class UsageTask extends RecursiveTask<Usage> {
+        private final FileSystem fs;
+        private final FileStatus status;
+        private final boolean summarize;
+
+        private UsageTask(FileSystem fs, FileStatus status, boolean summarize) {
+            this.fs = fs;
+            this.status = status;
+            this.summarize = summarize;
+        }
+
+        @Override
+        protected Usage compute() {
+            if (!status.isDirectory()) {
+                return new Usage(status.getLen(), 1, 0);
+            }
+            try {
+                if (summarize) {
+                    return Usage.of(blocking(() -> fs.getContentSummary(status.getPath())));
+                }
+                final FileStatus[] children = blocking(() -> fs.listStatus(status.getPath()));
+                final boolean small = children.length < threshold;
+                final List<UsageTask> subtasks = new ArrayList<>();
+                Usage usage = new Usage(0, 0, 1);
+                for (FileStatus child : children) {
+                    if (child.isDirectory()) {
+                        subtasks.add(new UsageTask(fs, child, small));
+                    } else {
+                        usage = usage.add(new Usage(child.getLen(), 1, 0));
+                    }
+                }
+                for (UsageTask subtask : ForkJoinTask.invokeAll(subtasks)) {
+                    usage = usage.add(subtask.join());
+                }
+                return usage;
+            } catch (IOException e) {
+                displayError(e);
+                return new Usage(0, 0, 1);
+            }
+        }
+    }
+
+    private static final class Usage {
+        private final long length;
+        private final long fileCount;
+        private final long directoryCount;
+
+        private Usage(long length, long fileCount, long directoryCount) {
+            this.length = length;
+            this.fileCount = fileCount;
+            this.directoryCount = directoryCount;
+        }
+
+        private static Usage of(ContentSummary summary) {
+            return new Usage(summary.getLength(), summary.getFileCount(), summary.getDirectoryCount());
+        }
+
+        private Usage add(Usage other) {
+            return new Usage(length + other.length, fileCount + other.fileCount, directoryCount + other.directoryCount);
+        }
+
+        @SuppressWarnings("deprecation")
+        private ContentSummary toContentSummary() {
+            return new ContentSummary(length, fileCount, directoryCount);
+        }
+    }
+}
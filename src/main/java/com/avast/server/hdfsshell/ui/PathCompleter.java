@@ -1,6 +1,7 @@
 package com.avast.server.hdfsshell.ui;
 
 import com.avast.server.hdfsshell.commands.ContextCommands;
+import com.avast.server.hdfsshell.commands.MetadataCache;
 import jline.console.completer.Completer;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.FileStatus;
@@ -84,20 +85,22 @@ public class PathCompleter implements Completer {
             rest = val.length() == 1 ? "" : val.substring(found + 1);
         }
 
-        final FileSystem fs = FileSystem.get(contextCommands.getConfiguration());
-        final Path f = new Path(val);
+        final FileSystem fs = contextCommands.getFileSystem();
+        final MetadataCache metadataCache = contextCommands.getMetadataCache();
+        final Path f = contextCommands.getSession().resolve(val);
 
         boolean folderFound = false;
-        if (fs.exists(f) && fs.getFileStatus(f).isDirectory() && !val.endsWith("/") && !val.equals(".")) {
+        final FileStatus fileStatus = metadataCache.getFileStatus(fs, f);
+        if (fileStatus != null && fileStatus.isDirectory() && !val.endsWith("/") && !val.equals(".")) {
             folderFound = true;
         }
 
         final Path pathCore = new Path(core);
-        if (!fs.exists(pathCore)) {
+        if (metadataCache.getFileStatus(fs, pathCore) == null) {
             return -1;
         }
 
-        final String[] suggestions = getSuggestions(rest, fs, pathCore);
+        final String[] suggestions = getSuggestions(rest, fs, metadataCache, pathCore);
 
         String commonPrefix = StringUtils.getCommonPrefix(suggestions);
         if (StringUtils.isNotEmpty(commonPrefix) && !commonPrefix.equals(rest)) {
@@ -129,10 +132,10 @@ public class PathCompleter implements Completer {
         return suggestions.length == 0 ? -1 : cursor;
     }
 
-    private String[] getSuggestions(String rest, FileSystem fs, Path pathCore) throws IOException {
+    private String[] getSuggestions(String rest, FileSystem fs, MetadataCache metadataCache, Path pathCore) throws IOException {
         final FileStatus[] statuses;
         try {
-            statuses = fs.listStatus(pathCore);
+            statuses = metadataCache.listStatus(fs, pathCore);
         } catch (IOException e) { //not access rights
             return new String[0];
         }
@@ -42,7 +42,7 @@ public class ShellPromptProvider extends DefaultPromptProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(ShellPromptProvider.class);
 
-    private static final String DEFAULT_PROMPT = "\033[36m\\u@\\h \033[0;39m\033[33m\\w\033[0;39m\033[36m\\$ \033[37;0;39m";
+    static final String DEFAULT_PROMPT = "\033[36m\\u@\\h \033[0;39m\033[33m\\w\033[0;39m\033[36m\\$ \033[37;0;39m";
     final ContextCommands contextCommands;
 
     private SimpleBashPromptInterpreter simpleBashPromptInterpreter;
@@ -70,7 +70,7 @@ public class ShellPromptProvider extends DefaultPromptProvider {
 
     private boolean isRootPrompt() {
         final String whoami = this.getWhoami();
-        final String[] groupsForUser = contextCommands.getGroupsForUser(whoami);
+        final String[] groupsForUser = contextCommands.getCachedGroupsForUser(whoami);
         if (groupsForUser.length == 0) { //make guess
             return "root".equals(whoami) || "hdfs".equals(whoami);
         }
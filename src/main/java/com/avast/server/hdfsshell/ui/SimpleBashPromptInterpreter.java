@@ -1,11 +1,11 @@
 package com.avast.server.hdfsshell.ui;
 
-import org.springframework.util.StringUtils;
-
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -59,6 +59,9 @@ public class SimpleBashPromptInterpreter {
     private final static Pattern DYNAMIC_ENCODING = Pattern.compile("\\\\[u#!HhdtT@AWw$]");
 
     private final String promptPS1;
+    private final Segment[] segments;
+    private final boolean hasTimeSegment;
+    private final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(128));
     private boolean addResetEnd;
     private boolean useCacheForNetInfo = true;
 
@@ -92,78 +95,94 @@ public class SimpleBashPromptInterpreter {
         PATTERN_12_hh_mm = DateTimeFormatter.ofPattern("h:mm a", locale);
         PATTERN_12_hh_mm_ss = DateTimeFormatter.ofPattern("h:mm:ss a", locale);
         WEEKDAY_MONTH_DATE = DateTimeFormatter.ofPattern("E MMM dd", locale);
+        final List<Segment> compiled = new ArrayList<>();
+        hasTimeSegment = compile(this.promptPS1, compiled);
+        segments = compiled.toArray(new Segment[0]);
     }
 
     public String interpret() {
+        final LocalDateTime now = hasTimeSegment ? LocalDateTime.now() : null;//we don't want to call get time when not needed
+        final StringBuilder resultString = buffer.get();
+        resultString.setLength(0);
+        for (Segment segment : segments) {
+            final String value = segment.value(now);
+            if (value != null) {
+                resultString.append(value);
+            }
+        }
+        if (addResetEnd && !endsWith(resultString, RESET_POSTFIX)) {
+            resultString.append(getReset());
+        }
+        return resultString.toString();
+    }
 
-        LocalDateTime now = null;//we don't want to call get time when not needed
-        final Matcher matcher = DYNAMIC_ENCODING.matcher(promptPS1);
-        final StringBuffer resultString = new StringBuffer();
+    /**
+     * Splits the prompt into literal and dynamic segments, so the prompt is not parsed for every rendering.
+     *
+     * @return true if there is any segment with time
+     */
+    private boolean compile(String ps1, List<Segment> result) {
+        boolean time = false;
+        final Matcher matcher = DYNAMIC_ENCODING.matcher(ps1);
+        int start = 0;
         while (matcher.find()) {
-            final String group = matcher.group();
-            switch (group) {
-                case "\\$":
-                    appendReplacement(matcher, resultString, isRoot == null ? "$" : isRoot.get() ? "#" : "$");
-                    break;
-                case "\\u":
-                    appendReplacement(matcher, resultString, username);
-                    break;
-                case "\\w":
-                    appendReplacement(matcher, resultString, cwdAbsolut);
-                    break;
-                case "\\W":
-                    appendReplacement(matcher, resultString, cwdShort);
-                    break;
-                case "\\#":
-                    appendReplacement(matcher, resultString, commandNum);
-                    break;
-                case "\\!":
-                    appendReplacement(matcher, resultString, historyNumber);
-                    break;
-                case "\\h":
-                    appendReplacement(matcher, resultString, getComputerName());
-                    break;
-                case "\\H":
-                    appendReplacement(matcher, resultString, fqdnSupplier);
-                    break;
-                case "\\d":
-                    now = getNow(now);
-                    appendReplacement(matcher, resultString, now.format(WEEKDAY_MONTH_DATE));
-                    break;
-                case "\\t":
-                    now = getNow(now);
-                    appendReplacement(matcher, resultString, now.format(PATTERN_24_HH_mm_ss));
-                    break;
-                case "\\T":
-                    now = getNow(now);
-                    appendReplacement(matcher, resultString, now.format(PATTERN_12_hh_mm_ss));
-                    break;
-                case "\\@":
-                    now = getNow(now);
-                    appendReplacement(matcher, resultString, now.format(PATTERN_12_hh_mm));
-                    break;
-                case "\\A":
-                    now = getNow(now);
-                    appendReplacement(matcher, resultString, now.format(PATTERN_24_HH_mm));
-                    break;
-            }
+            addLiteral(result, ps1.substring(start, matcher.start()));
+            final char code = matcher.group().charAt(1);
+            result.add(dynamicSegment(code));
+            time |= "dtT@A".indexOf(code) >= 0;
+            start = matcher.end();
         }
-        matcher.appendTail(resultString);
+        addLiteral(result, ps1.substring(start));
+        return time;
+    }
 
-        final String newPrompt = resultString.toString().replace("\\\\", "\\");//do it as last
+    private static void addLiteral(List<Segment> segments, String text) {
+        if (!text.isEmpty()) {
+            final String literal = text.replace("\\\\", "\\");
+            segments.add(now -> literal);
+        }
+    }
 
-        return appendReset(newPrompt);
+    private Segment dynamicSegment(char code) {
+        switch (code) {
+            case '$':
+                return now -> isRoot == null ? "$" : isRoot.get() ? "#" : "$";
+            case 'u':
+                return now -> get(username);
+            case 'w':
+                return now -> get(cwdAbsolut);
+            case 'W':
+                return now -> get(cwdShort);
+            case '#':
+                return now -> get(commandNum);
+            case '!':
+                return now -> get(historyNumber);
+            case 'h':
+                return now -> getComputerName();
+            case 'H':
+                return now -> get(fqdnSupplier);
+            case 'd':
+                return now -> now.format(WEEKDAY_MONTH_DATE);
+            case 't':
+                return now -> now.format(PATTERN_24_HH_mm_ss);
+            case 'T':
+                return now -> now.format(PATTERN_12_hh_mm_ss);
+            case '@':
+                return now -> now.format(PATTERN_12_hh_mm);
+            case 'A':
+                return now -> now.format(PATTERN_24_HH_mm);
+            default:
+                throw new IllegalArgumentException("Unsupported prompt sequence \\" + code);
+        }
     }
 
-    private String appendReset(String newPrompt) {
-        return newPrompt + ((addResetEnd && !newPrompt.endsWith(RESET_POSTFIX)) ? getReset() : "");
+    private static String get(Supplier<String> supplier) {
+        return supplier == null ? null : supplier.get();
     }
 
-    private LocalDateTime getNow(LocalDateTime now) {
-        if (now == null) {
-            now = LocalDateTime.now();
-        }
-        return now;
+    private static boolean endsWith(StringBuilder builder, String suffix) {
+        final int offset = builder.length() - suffix.length();
+        return offset >= 0 && builder.indexOf(suffix, offset) == offset;
     }
 
 
@@ -216,21 +235,6 @@ public class SimpleBashPromptInterpreter {
                 replace("\\r", "\r");
     }
 
-    private void appendReplacement(Matcher matcher, StringBuffer resultString, Supplier<String> supplier) {
-        if (supplier == null) {
-            supplier = () -> "";
-        }
-        appendReplacement(matcher, resultString, supplier.get());
-    }
-
-    private void appendReplacement(Matcher matcher, StringBuffer resultString, String value) {
-        if (StringUtils.isEmpty(value)) {
-            matcher.appendReplacement(resultString, "");
-        } else {
-            matcher.appendReplacement(resultString, Matcher.quoteReplacement(value));
-        }
-    }
-
     private String getFQDN() {
         if (useCacheForNetInfo && fqdn != null) {
             return fqdn;
@@ -418,4 +422,9 @@ public class SimpleBashPromptInterpreter {
     void setIsRoot(Supplier<Boolean> isRoot) {
         this.isRoot = isRoot;
     }
+
+    @FunctionalInterface
+    private interface Segment {
+        String value(LocalDateTime now);
+    }
 }
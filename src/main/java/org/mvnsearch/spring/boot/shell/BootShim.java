@@ -45,7 +45,7 @@ public class BootShim {
     }
 
     private void configureApplicationContext(ConfigurableApplicationContext annctx) {
-        this.createAndRegisterBeanDefinition(annctx, JLineShellComponent.class, "shell");
+        this.createAndRegisterBeanDefinition(annctx, CompleterShellComponent.class, "shell");
         annctx.getBeanFactory().registerSingleton("commandLine", commandLine);
     }
 
@@ -1,15 +1,27 @@
 package org.mvnsearch.spring.boot.shell;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.shell.core.CommandResult;
-import org.springframework.shell.core.JLineShellComponent;
 
 /**
  * @author Vitasek L.
@@ -17,42 +29,65 @@ import org.springframework.shell.core.JLineShellComponent;
 public class ClientConnection implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(ClientConnection.class);
     public static final ThreadLocal<PrintStream> context = new ThreadLocal<>();
+    /**
+     * Separate error output, set only for the framed protocol.
+     */
+    public static final ThreadLocal<PrintStream> errContext = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> resultCode = new ThreadLocal<>();
+    /**
+     * Attributes of the connection (eg. current directory of the session), shared by all commands of the connection.
+     * Attributes implementing {@link AutoCloseable} are closed with the connection.
+     */
+    public static final ThreadLocal<Map<String, Object>> sessionContext = new ThreadLocal<>();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private Socket sock;
-    private final JLineShellComponent shell;
+    private final UnixServer unixServer;
+    private final ShellCommandExecutor commandExecutor;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
 
     public ClientConnection(UnixServer unixServer, Socket sock) {
         this.sock = sock;
-        shell = unixServer.getBootShim().getJLineShellComponent();
+        this.unixServer = unixServer;
+        commandExecutor = unixServer.getShellCommandExecutor();
+    }
+
+    /**
+     * Stores the result code of the HDFS command, it's sent to the client by the framed protocol.
+     */
+    public static void setResultCode(int code) {
+        if (context.get() != null) {
+            resultCode.set(code);
+        }
+    }
+
+    /**
+     * @return result code of the last HDFS command executed by the current thread or null
+     */
+    public static Integer getResultCode() {
+        return resultCode.get();
     }
 
     @Override
     public void run() {
         context.remove();
+        unixServer.connectionStarted();
 
-        try (Scanner is = new Scanner(sock.getInputStream()); OutputStream os = sock.getOutputStream()) {
+        try (InputStream in = sock.getInputStream(); OutputStream os = sock.getOutputStream()) {
             LOG.info("Connected: " + sock);
 
-            try (PrintStream writer = new PrintStream(os, true)) {
-                context.set(writer);
-
-                String command;
-                while (is.hasNextLine() && (command = is.nextLine()) != null) {
-
-                    final CommandResult commandResult = shell.executeCommand(command);
-                    if (!commandResult.isSuccess()) {
-                        System.err.println(commandResult.getException().getMessage());
-                        writer.println(commandResult.getException().getMessage());
-                    } else {
-                        if (commandResult.getResult() != null) {
-                            writer.println(commandResult.getResult().toString());
-                        }
-                    }
-                    writer.flush();
-
-                }
+            final PushbackInputStream is = new PushbackInputStream(new BufferedInputStream(in, BUFFER_SIZE), 1);
+            final int version = FramedProtocol.detect(is);
+            if (version > 0) {
+                serveFrames(is, os, version);
+            } else {
+                serveLines(is, os);
             }
 
+        } catch (SocketTimeoutException e) {
+            LOG.info("Idle connection timed out: " + sock);
+            unixServer.connectionTimedOut();
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -64,8 +99,182 @@ public class ClientConnection implements Runnable {
                 e.printStackTrace();
             }
             context.remove();
+            errContext.remove();
+            resultCode.remove();
+            sessionContext.remove();
+            closeAttributes();
+            unixServer.connectionFinished();
+        }
+
+    }
+
+    private void closeAttributes() {
+        for (Object attribute : attributes.values()) {
+            if (attribute instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) attribute).close();
+                } catch (Exception e) {
+                    LOG.warn("Failed to close " + attribute, e);
+                }
+            }
+        }
+        attributes.clear();
+    }
+
+    private void serveLines(InputStream is, OutputStream os) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        try (PrintStream writer = new PrintStream(new BufferedOutputStream(os, BUFFER_SIZE), false)) {
+            context.set(writer);
+            sessionContext.set(attributes);
+
+            String command;
+            while ((command = reader.readLine()) != null) {
+
+                final CommandResult commandResult = commandExecutor.execute(command);
+                if (!commandResult.isSuccess()) {
+                    System.err.println(commandResult.getException().getMessage());
+                    writer.println(commandResult.getException().getMessage());
+                } else {
+                    if (commandResult.getResult() != null) {
+                        writer.println(commandResult.getResult().toString());
+                    }
+                }
+                writer.flush();
+
+            }
+        }
+    }
+
+    /**
+     * Version 1 executes the commands one by one, version 2 executes up to max in flight commands
+     * of the connection concurrently on the command threads of the server.
+     */
+    private void serveFrames(InputStream in, OutputStream os, int version) throws IOException {
+        final FramedProtocol.FrameWriter frames = new FramedProtocol.FrameWriter(os, version);
+        final int maxInFlight = version >= 2 ? unixServer.getMaxInFlight() : 1;
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final DataInputStream is = new DataInputStream(new BusyInputStream(in, inFlight, maxInFlight));
+        try {
+            FramedProtocol.Frame frame;
+            while ((frame = FramedProtocol.readFrame(is, version)) != null) {
+                if (frame.type != FramedProtocol.COMMAND) {
+                    throw new IOException("Unexpected frame type " + (char) frame.type);
+                }
+                final int tag = frame.tag;
+                final String command = new String(frame.payload, StandardCharsets.UTF_8);
+                if (version < 2) {
+                    executeFramed(frames, tag, command);
+                    continue;
+                }
+                //stops reading the socket until a command of this connection finishes
+                inFlight.acquireUninterruptibly();
+                try {
+                    unixServer.executeCommand(() -> {
+                        try {
+                            executeFramed(frames, tag, command);
+                        } catch (IOException e) {
+                            LOG.debug("Failed to send result of " + command, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    rejectFramed(frames, tag, e.getMessage());
+                    if (unixServer.isShutdown()) {
+                        throw new IOException("Daemon is shutting down", e);
+                    }
+                }
+            }
+        } finally {
+            //the socket is closed after all commands of the connection are finished
+            inFlight.acquireUninterruptibly(maxInFlight);
+        }
+    }
+
+    /**
+     * Replies to a command which was not executed in the same way as the server rejects a connection - by a plain message.
+     */
+    private static void rejectFramed(FramedProtocol.FrameWriter frames, int tag, String message) throws IOException {
+        final PrintStream err = new PrintStream(frames.stream(FramedProtocol.STDERR, tag), false, "UTF-8");
+        err.println(message);
+        err.flush();
+        frames.writeStatus(tag, -1);
+        frames.flush();
+    }
+
+    private void executeFramed(FramedProtocol.FrameWriter frames, int tag, String command) throws IOException {
+        final PrintStream out = new PrintStream(frames.stream(FramedProtocol.STDOUT, tag), false, "UTF-8");
+        final PrintStream err = new PrintStream(frames.stream(FramedProtocol.STDERR, tag), false, "UTF-8");
+        context.set(out);
+        errContext.set(err);
+        sessionContext.set(attributes);
+        resultCode.remove();
+        try {
+            final CommandResult commandResult = commandExecutor.execute(command);
+            final int status;
+            if (!commandResult.isSuccess()) {
+                err.println(commandResult.getException().getMessage());
+                status = -1;
+            } else {
+                if (commandResult.getResult() != null) {
+                    out.println(commandResult.getResult().toString());
+                }
+                final Integer code = resultCode.get();
+                status = code == null ? 0 : code;
+            }
+            out.flush();
+            err.flush();
+            frames.writeStatus(tag, status);
+            frames.flush();
+        } finally {
+            context.remove();
+            errContext.remove();
+            sessionContext.remove();
+            resultCode.remove();
+        }
+    }
+
+    /**
+     * The connection is not idle while its commands are running - the idle timeout is ignored.
+     */
+    private static final class BusyInputStream extends FilterInputStream {
+        private final Semaphore inFlight;
+        private final int maxInFlight;
+
+        private BusyInputStream(InputStream in, Semaphore inFlight, int maxInFlight) {
+            super(in);
+            this.inFlight = inFlight;
+            this.maxInFlight = maxInFlight;
         }
 
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                try {
+                    return super.read();
+                } catch (SocketTimeoutException e) {
+                    checkBusy(e);
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                try {
+                    return super.read(b, off, len);
+                } catch (SocketTimeoutException e) {
+                    checkBusy(e);
+                }
+            }
+        }
+
+        private void checkBusy(SocketTimeoutException e) throws SocketTimeoutException {
+            if (inFlight.availablePermits() >= maxInFlight) {
+                throw e;
+            }
+        }
     }
 
 }
@@ -0,0 +1,103 @@
+package org.mvnsearch.spring.boot.shell;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.event.ParseResult;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Dispatch table of simple commands - commands with the only option, the unnamed String option, which gets
+ * the rest of the line (eg. all <code>hdfs dfs</code> commands). Such commands are dispatched by their name
+ * without the parser of Spring Shell, the rest of the line is passed as it is. Other commands are not in the table.
+ *
+ * @author Vitasek L.
+ */
+public class CommandDispatcher {
+
+    private static final String NULL = "__NULL__";
+
+    private final Map<String, Handler> handlers = new HashMap<>();
+    private int maxWords = 1;
+
+    public CommandDispatcher(Collection<?> commandBeans) {
+        for (Object bean : commandBeans) {
+            ReflectionUtils.doWithMethods(AopUtils.getTargetClass(bean), method -> register(bean, method),
+                    method -> method.isAnnotationPresent(CliCommand.class));
+        }
+    }
+
+    private void register(Object bean, Method method) {
+        if (method.getParameterCount() != 1 || method.getParameterTypes()[0] != String.class) {
+            return;
+        }
+        CliOption option = null;
+        for (Annotation annotation : method.getParameterAnnotations()[0]) {
+            if (annotation instanceof CliOption) {
+                option = (CliOption) annotation;
+            }
+        }
+        // an option with more keys (eg. {"", "command"}) may be given by name, Spring Shell has to parse it
+        if (option == null || !Arrays.equals(option.key(), new String[]{""})) {
+            return;
+        }
+        final String defaultValue = NULL.equals(option.unspecifiedDefaultValue()) ? null : option.unspecifiedDefaultValue();
+        final Handler handler = new Handler(bean, method, defaultValue);
+        for (String name : method.getAnnotation(CliCommand.class).value()) {
+            handlers.putIfAbsent(name, handler);
+            maxWords = Math.max(maxWords, name.split(" ").length);
+        }
+    }
+
+    /**
+     * @return the command to invoke or null if the line is not a simple command
+     */
+    public ParseResult dispatch(String line) {
+        final String trimmed = line.trim();
+        int end = 0;
+        int words = 0;
+        Handler found = null;
+        int foundEnd = 0;
+        while (words < maxWords && end < trimmed.length()) {
+            final int space = trimmed.indexOf(' ', end);
+            end = space < 0 ? trimmed.length() : space;
+            words++;
+            final Handler handler = handlers.get(trimmed.substring(0, end));
+            if (handler != null) {
+                found = handler;
+                foundEnd = end;
+            }
+            while (end < trimmed.length() && trimmed.charAt(end) == ' ') {
+                end++;
+            }
+        }
+        if (found == null) {
+            return null;
+        }
+        final String argument = trimmed.substring(foundEnd).trim();
+        return new ParseResult(found.method, found.bean, new Object[]{argument.isEmpty() ? found.defaultValue : argument});
+    }
+
+    public int size() {
+        return handlers.size();
+    }
+
+    private static final class Handler {
+        private final Object bean;
+        private final Method method;
+        private final String defaultValue;
+
+        private Handler(Object bean, Method method, String defaultValue) {
+            this.bean = bean;
+            this.method = method;
+            this.defaultValue = defaultValue;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.mvnsearch.spring.boot.shell;
+
+import java.lang.management.ManagementFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.shell.core.JLineShellComponent;
+
+import jline.console.ConsoleReader;
+import jline.console.completer.Completer;
+
+/**
+ * Shell component which adds all {@link Completer} beans to the console reader as soon as the reader is created,
+ * so the completion works from the first prompt.
+ *
+ * @author Vitasek L.
+ */
+public class CompleterShellComponent extends JLineShellComponent {
+    private static final Logger LOG = LoggerFactory.getLogger(CompleterShellComponent.class);
+
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        super.setApplicationContext(applicationContext);
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    protected ConsoleReader createConsoleReader() {
+        final ConsoleReader reader = super.createConsoleReader();
+        for (Completer completer : applicationContext.getBeansOfType(Completer.class).values()) {
+            reader.addCompleter(completer);
+        }
+        LOG.debug("Shell is interactive {} ms after JVM start",
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+        return reader;
+    }
+}
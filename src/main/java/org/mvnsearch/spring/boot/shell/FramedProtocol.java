@@ -0,0 +1,213 @@
+package org.mvnsearch.spring.boot.shell;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Length prefixed binary protocol of the daemon, an alternative to the line protocol.
+ * <pre>
+ * handshake (client)  0x00 'H' 'S' version
+ * frame (version 1)   type (1 byte) | payload length (4 bytes, big endian) | payload
+ * frame (version 2)   type (1 byte) | tag (4 bytes, big endian) | payload length (4 bytes, big endian) | payload
+ * </pre>
+ * The client sends {@link #COMMAND} frames (UTF-8 command line), the server answers with any number of {@link #STDOUT}
+ * and {@link #STDERR} frames (UTF-8 output) followed by one {@link #STATUS} frame (4 bytes result code).
+ * In version 1 the commands are executed one by one. In version 2 the commands are executed concurrently,
+ * all response frames carry the tag of the command and frames of different commands are interleaved.
+ * A connection starting with any other byte than 0x00 uses the line protocol.
+ *
+ * @author Vitasek L.
+ */
+public final class FramedProtocol {
+
+    public static final int VERSION = 2;
+
+    public static final byte COMMAND = 'C';
+    public static final byte STDOUT = 'O';
+    public static final byte STDERR = 'E';
+    public static final byte STATUS = 'S';
+
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+    private static final int MAX_COMMAND_LENGTH = 1024 * 1024;
+
+    private static final byte[] MAGIC = {0x00, 'H', 'S'};
+
+    private FramedProtocol() {
+    }
+
+    /**
+     * Reads the handshake if the client sent it.
+     *
+     * @return version of the framed protocol or 0 for the line protocol
+     */
+    public static int detect(PushbackInputStream in) throws IOException {
+        final int first = in.read();
+        if (first < 0) {
+            return 0;
+        }
+        if (first != MAGIC[0]) {
+            in.unread(first);
+            return 0;
+        }
+        for (int i = 1; i < MAGIC.length; i++) {
+            if (in.read() != MAGIC[i]) {
+                throw new IOException("Invalid handshake of the framed protocol");
+            }
+        }
+        final int version = in.read();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported version of the framed protocol: " + version);
+        }
+        return version;
+    }
+
+    public static byte[] handshake(int version) {
+        return new byte[]{MAGIC[0], MAGIC[1], MAGIC[2], (byte) version};
+    }
+
+    /**
+     * @return the frame or null at the end of the stream
+     */
+    public static Frame readFrame(DataInputStream in, int version) throws IOException {
+        final int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        final int tag = version >= 2 ? in.readInt() : 0;
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_COMMAND_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        final byte[] payload = new byte[length];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            throw new IOException("Unexpected end of frame", e);
+        }
+        return new Frame((byte) type, tag, payload);
+    }
+
+    public static final class Frame {
+        public final byte type;
+        public final int tag;
+        public final byte[] payload;
+
+        public Frame(byte type, int tag, byte[] payload) {
+            this.type = type;
+            this.tag = tag;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Writes frames into the socket, thread safe.
+     */
+    public static final class FrameWriter {
+        private final OutputStream os;
+        private final int version;
+
+        public FrameWriter(OutputStream os, int version) {
+            //a full frame payload is not copied to the buffer, only the header
+            this.os = new BufferedOutputStream(os, MAX_FRAME_LENGTH);
+            this.version = version;
+        }
+
+        public synchronized void writeFrame(byte type, int tag, byte[] payload, int offset, int length) throws IOException {
+            os.write(type);
+            if (version >= 2) {
+                writeInt(tag);
+            }
+            writeInt(length);
+            os.write(payload, offset, length);
+        }
+
+        private void writeInt(int value) throws IOException {
+            os.write(value >>> 24);
+            os.write(value >>> 16);
+            os.write(value >>> 8);
+            os.write(value);
+        }
+
+        public void writeStatus(int tag, int resultCode) throws IOException {
+            writeFrame(STATUS, tag, new byte[]{(byte) (resultCode >>> 24), (byte) (resultCode >>> 16), (byte) (resultCode >>> 8), (byte) resultCode}, 0, 4);
+        }
+
+        public synchronized void flush() throws IOException {
+            os.flush();
+        }
+
+        /**
+         * @return stream which buffers the output into frames of the given type and tag
+         */
+        public OutputStream stream(byte type, int tag) {
+            return new FrameOutputStream(this, type, tag);
+        }
+    }
+
+    /**
+     * Buffers the output, a full buffer is sent as one frame immediately, the rest is sent to the socket on {@link #flush()}.
+     * Writes of full frames are not buffered at all.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final FrameWriter writer;
+        private final byte type;
+        private final int tag;
+        private byte[] buffer;
+        private int count;
+
+        private FrameOutputStream(FrameWriter writer, byte type, int tag) {
+            this.writer = writer;
+            this.type = type;
+            this.tag = tag;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (buffer == null) {
+                buffer = new byte[MAX_FRAME_LENGTH];
+            }
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == 0 && len >= MAX_FRAME_LENGTH) {
+                    //nothing is buffered, a full frame is sent directly from the caller's array
+                    writer.writeFrame(type, tag, b, off, MAX_FRAME_LENGTH);
+                    writer.flush();
+                    off += MAX_FRAME_LENGTH;
+                    len -= MAX_FRAME_LENGTH;
+                    continue;
+                }
+                if (buffer == null) {
+                    buffer = new byte[MAX_FRAME_LENGTH];
+                }
+                if (count == buffer.length) {
+                    flush();
+                }
+                final int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (count > 0) {
+                writer.writeFrame(type, tag, buffer, 0, count);
+                count = 0;
+            }
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.mvnsearch.spring.boot.shell;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collection;
+
+import org.springframework.shell.core.CommandResult;
+import org.springframework.shell.core.JLineShellComponent;
+import org.springframework.shell.core.SimpleParser;
+import org.springframework.shell.event.ParseResult;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Executes commands of the daemon concurrently. {@link JLineShellComponent#executeCommand(String)} runs all commands
+ * under one global lock of the execution strategy, here only the parsing is serialized and the command method is invoked
+ * directly by the calling thread. Simple commands are dispatched by {@link CommandDispatcher} without the parser at all.
+ *
+ * @author Vitasek L.
+ */
+public class ShellCommandExecutor {
+
+    private final SimpleParser parser;
+    private final CommandDispatcher dispatcher;
+
+    public ShellCommandExecutor(JLineShellComponent shell, Collection<?> commandBeans) {
+        this.parser = shell.getSimpleParser();
+        this.dispatcher = new CommandDispatcher(commandBeans);
+    }
+
+    public CommandResult execute(String line) {
+        if (line == null || line.trim().isEmpty() || line.trim().startsWith("//") || line.trim().startsWith("#")) {
+            return new CommandResult(true);
+        }
+        ParseResult parseResult = dispatcher.dispatch(line);
+        if (parseResult == null) {
+            synchronized (parser) {
+                parseResult = parser.parse(line);
+            }
+        }
+        if (parseResult == null) {
+            return new CommandResult(false, null, new IllegalArgumentException("Command '" + line + "' not found"));
+        }
+        try {
+            final Object result = ReflectionUtils.invokeMethod(parseResult.getMethod(), parseResult.getInstance(), parseResult.getArguments());
+            return new CommandResult(true, result, null);
+        } catch (UndeclaredThrowableException e) {
+            return new CommandResult(false, null, e.getCause() != null ? e.getCause() : e);
+        } catch (RuntimeException e) {
+            return new CommandResult(false, null, e);
+        }
+    }
+}
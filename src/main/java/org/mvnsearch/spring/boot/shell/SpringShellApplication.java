@@ -1,10 +1,7 @@
 package org.mvnsearch.spring.boot.shell;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -18,12 +15,8 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.env.Environment;
 import org.springframework.shell.core.CommandResult;
 import org.springframework.shell.core.JLineShellComponent;
-import org.springframework.util.ReflectionUtils;
 
 import com.avast.server.hdfsshell.commands.ContextCommands;
-import com.avast.server.hdfsshell.ui.PathCompleter;
-
-import jline.console.ConsoleReader;
 
 /**
  * spring shell application
@@ -75,12 +68,21 @@ public class SpringShellApplication {
             } else {
                 if (System.getProperty("daemon") != null) {
                     final Environment env = ctx.getBean(Environment.class);
-                    new UnixServer(bootShim, env.getProperty("socket.filepath", "/var/tmp/hdfs-shell.sock")).run();
+                    final UnixServer unixServer = new UnixServer(bootShim, env.getProperty("socket.filepath", UnixServer.DEFAULT_SOCKET_PATH),
+                            env.getProperty("daemon.workers", Integer.class, UnixServer.DEFAULT_WORKERS),
+                            env.getProperty("daemon.max.connections", Integer.class, UnixServer.DEFAULT_MAX_CONNECTIONS),
+                            env.getProperty("daemon.idle.timeout.ms", Integer.class, UnixServer.DEFAULT_IDLE_TIMEOUT_MILLIS),
+                            env.getProperty("daemon.command.threads", Integer.class, UnixServer.DEFAULT_COMMAND_THREADS),
+                            env.getProperty("daemon.max.in.flight", Integer.class, UnixServer.DEFAULT_MAX_IN_FLIGHT));
+                    ctx.getBeanFactory().registerSingleton("unixServer", unixServer);
+                    unixServer.run();
                 } else {
                     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                         LOG.info(AnsiOutput.toString(AnsiColor.DEFAULT, System.lineSeparator(), AnsiColor.DEFAULT));
                     }));//another new line on exit from interactive mode
-                    new Timer().schedule(new InitCompletionTimerTask(bootShim), 5000);// hack
+                    final ContextCommands context = ctx.getBean(ContextCommands.class);
+                    context.enablePrefetching();
+                    context.warmUp();
                     bootShim.run();
                 }
             }
@@ -92,30 +94,4 @@ public class SpringShellApplication {
         }
         return 0;
     }
-
-    private static class InitCompletionTimerTask extends TimerTask {
-        private final BootShim bootShim;
-
-        public InitCompletionTimerTask(BootShim bootShim) {
-            this.bootShim = bootShim;
-        }
-
-        @Override
-        public void run() {
-            JLineShellComponent shell = bootShim.getJLineShellComponent();
-            final Field readerField = ReflectionUtils.findField(JLineShellComponent.class, "reader");
-            ReflectionUtils.makeAccessible(readerField);
-            final ConsoleReader reader;
-            try {
-                reader = (ConsoleReader) readerField.get(shell);
-                if (reader == null) {
-                    new Timer().schedule(new InitCompletionTimerTask(bootShim), 5000);
-                    return;
-                }
-                reader.addCompleter(new PathCompleter(bootShim.getCtx().getBean(ContextCommands.class)));
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            }
-        }
-    }
 }
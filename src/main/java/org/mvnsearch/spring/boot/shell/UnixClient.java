@@ -0,0 +1,201 @@
+package org.mvnsearch.spring.boot.shell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+/**
+ * Thin client of the daemon for one-shot commands, launched by <code>hdfs-shell-client.sh</code>.
+ * Sends the arguments as one command to the {@link UnixServer} using the {@link FramedProtocol}, streams the output
+ * and exits with the result code of the command.
+ * If no daemon listens on the socket and the system property <code>daemon.command</code> is set, the command is started
+ * (one client at a time, guarded by a lock file next to the socket) and the client waits for the daemon.
+ * The client does not use Spring nor Hadoop, so its JVM starts in a fraction of the time of the shell.
+ *
+ * @author Vitasek L.
+ */
+public final class UnixClient {
+
+    static final long DEFAULT_START_TIMEOUT_MILLIS = 120_000;
+
+    private static final int TAG = 1;
+    private static final long RETRY_MILLIS = 100;
+
+    private UnixClient() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: hdfs-shell-client.sh <command> [arguments]");
+            return -1;
+        }
+        final File socketFile = new File(System.getProperty("socket.filepath", UnixServer.DEFAULT_SOCKET_PATH));
+        try (Socket socket = connect(socketFile)) {
+            return execute(socket, commandLine(args),
+                    new FileOutputStream(FileDescriptor.out), new FileOutputStream(FileDescriptor.err));
+        } catch (IOException e) {
+            System.err.println("hdfs-shell: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Joins the arguments into one command line, arguments with whitespace, quotes or backslashes are double quoted
+     * (with <code>"</code> and <code>\\</code> escaped), so the shell gets the same arguments as the client.
+     */
+    static String commandLine(String[] args) {
+        final StringBuilder line = new StringBuilder();
+        for (String arg : args) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            if (!arg.isEmpty() && arg.chars().noneMatch(c -> Character.isWhitespace(c) || c == '"' || c == '\'' || c == '\\')) {
+                line.append(arg);
+                continue;
+            }
+            line.append('"');
+            for (int i = 0; i < arg.length(); i++) {
+                final char c = arg.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+        return line.toString();
+    }
+
+    private static Socket connect(File socketFile) throws IOException {
+        final Socket socket = tryConnect(socketFile);
+        if (socket != null) {
+            return socket;
+        }
+        final String daemonCommand = System.getProperty("daemon.command");
+        if (daemonCommand == null) {
+            throw new IOException("No daemon is listening on " + socketFile);
+        }
+        final long deadline = System.currentTimeMillis() + Long.getLong("daemon.start.timeout.ms", DEFAULT_START_TIMEOUT_MILLIS);
+        final File lockFile = new File(socketFile.getPath() + ".lock");
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            final Socket started = tryConnect(socketFile); //started by another client in the meantime
+            if (started != null) {
+                return started;
+            }
+            Files.deleteIfExists(socketFile.toPath()); //left by a dead daemon
+            final File logFile = new File(System.getProperty("daemon.log", socketFile.getPath() + ".log"));
+            new ProcessBuilder(daemonCommand).
+                    redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null"))).
+                    redirectOutput(ProcessBuilder.Redirect.appendTo(logFile)).
+                    redirectErrorStream(true).
+                    start();
+            return waitForDaemon(socketFile, deadline, logFile);
+        }
+    }
+
+    private static Socket waitForDaemon(File socketFile, long deadline, File logFile) throws IOException {
+        while (System.currentTimeMillis() < deadline) {
+            final Socket socket = tryConnect(socketFile);
+            if (socket != null) {
+                return socket;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IOException("Daemon did not start listening on " + socketFile + ", see " + logFile);
+    }
+
+    private static Socket tryConnect(File socketFile) throws IOException {
+        if (!socketFile.exists()) {
+            return null;
+        }
+        final AFUNIXSocket socket = AFUNIXSocket.newInstance();
+        try {
+            socket.connect(new AFUNIXSocketAddress(socketFile));
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            return null;
+        }
+    }
+
+    /**
+     * @return result code of the command
+     */
+    static int execute(Socket socket, String command, OutputStream stdout, OutputStream stderr) throws IOException {
+        final OutputStream os = socket.getOutputStream();
+        os.write(FramedProtocol.handshake(FramedProtocol.VERSION));
+        final FramedProtocol.FrameWriter writer = new FramedProtocol.FrameWriter(os, FramedProtocol.VERSION);
+        final byte[] payload = command.getBytes(StandardCharsets.UTF_8);
+        writer.writeFrame(FramedProtocol.COMMAND, TAG, payload, 0, payload.length);
+        writer.flush();
+
+        final BufferedInputStream socketIn = new BufferedInputStream(socket.getInputStream(), FramedProtocol.MAX_FRAME_LENGTH);
+        socketIn.mark(1);
+        final int first = socketIn.read();
+        socketIn.reset();
+        if (first >= 0 && first != FramedProtocol.STDOUT && first != FramedProtocol.STDERR && first != FramedProtocol.STATUS) {
+            copy(socketIn, stderr); //plain text message, eg. too many connections
+            stderr.flush();
+            return -1;
+        }
+        final OutputStream out = new BufferedOutputStream(stdout, FramedProtocol.MAX_FRAME_LENGTH);
+        final DataInputStream in = new DataInputStream(socketIn);
+        FramedProtocol.Frame frame;
+        while ((frame = FramedProtocol.readFrame(in, FramedProtocol.VERSION)) != null) {
+            switch (frame.type) {
+                case FramedProtocol.STDOUT:
+                    out.write(frame.payload);
+                    if (in.available() == 0) {
+                        out.flush(); //the daemon flushed the output, nothing else is waiting
+                    }
+                    break;
+                case FramedProtocol.STDERR:
+                    out.flush();
+                    stderr.write(frame.payload);
+                    stderr.flush();
+                    break;
+                case FramedProtocol.STATUS:
+                    out.flush();
+                    return ByteBuffer.wrap(frame.payload).getInt();
+                default:
+                    throw new IOException("Unexpected frame type " + frame.type);
+            }
+        }
+        out.flush();
+        throw new IOException("Connection closed by the daemon before the command finished");
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -2,26 +2,76 @@ package org.mvnsearch.spring.boot.shell;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.newsclub.net.unix.AFUNIXServerSocket;
 import org.newsclub.net.unix.AFUNIXSocketAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.shell.core.CommandMarker;
 
 /**
+ * Daemon server. Connections are served by a bounded pool of workers, connections over the workers are queued
+ * up to the max connections limit, the rest is rejected. Idle connections are closed after the idle timeout.
+ * Commands of multiplexed connections run on a shared pool of command threads, every connection may have
+ * at most max in flight commands running at once.
+ *
  * @author Vitasek L.
  */
 @SuppressWarnings("Duplicates")
 public class UnixServer {
     private static final Logger LOG = LoggerFactory.getLogger(UnixServer.class);
+
+    public static final String DEFAULT_SOCKET_PATH = "/var/tmp/hdfs-shell.sock";
+    public static final int DEFAULT_WORKERS = 16;
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 300_000;
+    public static final int DEFAULT_COMMAND_THREADS = 16;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
     public BootShim bootShim;
     private final String path;
+    private final int workers;
+    private final int maxConnections;
+    private final int idleTimeoutMillis;
+    private final int commandThreads;
+    private final int maxInFlight;
+    private final int maxQueuedCommands;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private volatile ThreadPoolExecutor executor;
+    private volatile ThreadPoolExecutor commandExecutor;
+    private volatile ShellCommandExecutor shellCommandExecutor;
 
     public UnixServer(BootShim bootShim, String path) {
+        this(bootShim, path, DEFAULT_WORKERS, DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public UnixServer(BootShim bootShim, String path, int workers, int maxConnections, int idleTimeoutMillis) {
+        this(bootShim, path, workers, maxConnections, idleTimeoutMillis, DEFAULT_COMMAND_THREADS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public UnixServer(BootShim bootShim, String path, int workers, int maxConnections, int idleTimeoutMillis,
+                      int commandThreads, int maxInFlight) {
         this.bootShim = bootShim;
         this.path = path;
+        this.workers = Math.max(1, workers);
+        this.maxConnections = Math.max(this.workers, maxConnections);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.commandThreads = Math.max(1, commandThreads);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxQueuedCommands = this.workers * this.maxInFlight;
     }
 
     public BootShim getBootShim() {
@@ -36,7 +86,19 @@ public class UnixServer {
         final File socketFile = new File(path);
         socketFile.deleteOnExit();
 
-        final ExecutorService executorService = Executors.newCachedThreadPool();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxConnections - workers)),
+                runnable -> new Thread(runnable, "hdfs-shell-worker-" + threadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        //connections being served * max in flight, a command over the limit is rejected by executeCommand
+        final AtomicInteger commandThreadCounter = new AtomicInteger();
+        commandExecutor = new ThreadPoolExecutor(commandThreads, commandThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueuedCommands),
+                runnable -> new Thread(runnable, "hdfs-shell-command-" + commandThreadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        commandExecutor.allowCoreThreadTimeOut(true);
 
         try (AFUNIXServerSocket server = AFUNIXServerSocket.newInstance()) {
             server.bind(new AFUNIXSocketAddress(socketFile));
@@ -44,12 +106,117 @@ public class UnixServer {
 
             while (!Thread.interrupted()) {
                 LOG.info("Waiting for connection...");
-                executorService.execute(new ClientConnection(this, server.accept()));
+                final Socket sock = server.accept();
+                accepted.incrementAndGet();
+                try {
+                    if (idleTimeoutMillis > 0) {
+                        sock.setSoTimeout(idleTimeoutMillis);
+                    }
+                    executor.execute(new ClientConnection(this, sock));
+                } catch (RejectedExecutionException e) {
+                    reject(sock);
+                }
             }
         } finally {
-            executorService.shutdown();
+            executor.shutdown();
+            commandExecutor.shutdown();
         }
     }
 
+    /**
+     * Runs a command of a multiplexed connection.
+     *
+     * @throws RejectedExecutionException with the message for the client if the queue of commands is full or the daemon is shutting down
+     */
+    void executeCommand(Runnable command) {
+        final ThreadPoolExecutor pool = commandExecutor;
+        try {
+            pool.execute(command);
+        } catch (RejectedExecutionException e) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Daemon is shutting down", e);
+            }
+            LOG.warn("Too many commands, rejecting a command");
+            throw new RejectedExecutionException("Too many commands (max " + maxQueuedCommands + " queued), try it again later", e);
+        }
+    }
 
+    boolean isShutdown() {
+        final ThreadPoolExecutor pool = commandExecutor;
+        return pool != null && pool.isShutdown();
+    }
+
+    ShellCommandExecutor getShellCommandExecutor() {
+        ShellCommandExecutor result = shellCommandExecutor;
+        if (result == null) {
+            result = new ShellCommandExecutor(bootShim.getJLineShellComponent(),
+                    bootShim.getCtx().getBeansOfType(CommandMarker.class).values());
+            shellCommandExecutor = result;
+        }
+        return result;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    private void reject(Socket sock) {
+        rejected.incrementAndGet();
+        LOG.warn("Too many connections, rejecting " + sock);
+        try (OutputStream os = sock.getOutputStream()) {
+            os.write(("Too many connections (max " + maxConnections + "), try it again later" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.debug("Failed to reject connection", e);
+        } finally {
+            try {
+                sock.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close connection", e);
+            }
+        }
+    }
+
+    void connectionStarted() {
+        active.incrementAndGet();
+    }
+
+    void connectionFinished() {
+        active.decrementAndGet();
+    }
+
+    void connectionTimedOut() {
+        timedOut.incrementAndGet();
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public int getQueuedConnections() {
+        final ThreadPoolExecutor pool = executor;
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    public int getRunningCommands() {
+        final ThreadPoolExecutor pool = commandExecutor;
+        return pool == null ? 0 : pool.getActiveCount() + pool.getQueue().size();
+    }
+
+    public long getAcceptedConnections() {
+        return accepted.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejected.get();
+    }
+
+    public long getTimedOutConnections() {
+        return timedOut.get();
+    }
+
+    public String getStatistics() {
+        return String.format("active=%d queued=%d accepted=%d rejected=%d timedOut=%d commands=%d workers=%d maxConnections=%d idleTimeout=%dms commandThreads=%d maxInFlight=%d",
+                getActiveConnections(), getQueuedConnections(), getAcceptedConnections(), getRejectedConnections(),
+                getTimedOutConnections(), getRunningCommands(), workers, maxConnections, idleTimeoutMillis, commandThreads, maxInFlight);
+    }
 }
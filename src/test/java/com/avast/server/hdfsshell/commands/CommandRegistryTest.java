@@ -0,0 +1,57 @@
+package com.avast.server.hdfsshell.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.security.PrivilegedAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.shell.Command;
+import org.apache.hadoop.fs.shell.CommandFactory;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Test;
+
+/**
+ * @author Vitasek L.
+ */
+public class CommandRegistryTest {
+
+    @Test
+    public void returnsNewInstanceForEveryCall() {
+        final CommandRegistry registry = new CommandRegistry();
+        final Configuration conf = new Configuration();
+
+        final Command first = registry.getInstance("-ls", conf);
+        final Command second = registry.getInstance("-ls", conf);
+        assertNotNull(first);
+        assertNotSame(first, second);
+
+        first.out = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(System.out, second.out);
+    }
+
+    @Test
+    public void sharedByAlternatingUsers() {
+        final CommandRegistry registry = new CommandRegistry();
+        final Configuration conf = new Configuration();
+        final UserGroupInformation alice = UserGroupInformation.createRemoteUser("alice");
+        final UserGroupInformation bob = UserGroupInformation.createRemoteUser("bob");
+
+        final CommandFactory factory = registry.getCommandFactory(conf);
+        for (int i = 0; i < 3; i++) {
+            assertSame(factory, alice.doAs((PrivilegedAction<CommandFactory>) () -> registry.getCommandFactory(conf)));
+            assertSame(factory, bob.doAs((PrivilegedAction<CommandFactory>) () -> registry.getCommandFactory(conf)));
+        }
+        assertNotNull(bob.doAs((PrivilegedAction<Command>) () -> registry.getInstance("-ls", conf)));
+    }
+
+    @Test
+    public void unknownCommand() {
+        assertNull(new CommandRegistry().getInstance("-unknown", new Configuration()));
+    }
+}
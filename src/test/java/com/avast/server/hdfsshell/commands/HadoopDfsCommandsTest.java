@@ -0,0 +1,35 @@
+package com.avast.server.hdfsshell.commands;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Vitasek L.
+ */
+public class HadoopDfsCommandsTest {
+
+    @Test
+    public void modifiedPathsSkipLocalSourcesAndSpecs() {
+        assertEquals(Collections.singletonList("/data"), modifiedPaths("-put -f -t 4 local1 local2 /data"));
+        assertEquals(Collections.singletonList("/dst"), modifiedPaths("-cp -p /src1 /src2 /dst"));
+        assertEquals(Arrays.asList("/a", "/b"), modifiedPaths("-chmod -R 755 /a /b"));
+        assertEquals(Collections.singletonList("/a"), modifiedPaths("-chmod u+x /a"));
+        assertEquals(Collections.singletonList("/a"), modifiedPaths("-chown -R -P 8 user:group /a"));
+        assertEquals(Collections.singletonList("/a"), modifiedPaths("-setrep -w 3 /a"));
+        assertEquals(Collections.singletonList("/a"), modifiedPaths("-setfacl -m user:hadoop:rw- /a"));
+        assertEquals(Collections.singletonList("/dir"), modifiedPaths("-renameSnapshot /dir old new"));
+        assertEquals(Arrays.asList("/src", "/dst"), modifiedPaths("-mv /src /dst"));
+        assertEquals(Arrays.asList("/a", "b*"), modifiedPaths("-rm -r -skipTrash /a b*"));
+        assertEquals(Collections.emptyList(), modifiedPaths("-expunge"));
+    }
+
+    private static List<String> modifiedPaths(String line) {
+        final String[] words = line.split(" ");
+        return HadoopDfsCommands.modifiedPaths(words[0], Arrays.copyOfRange(words, 1, words.length));
+    }
+}
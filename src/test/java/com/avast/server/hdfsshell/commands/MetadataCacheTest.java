@@ -0,0 +1,63 @@
+package com.avast.server.hdfsshell.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Vitasek L.
+ */
+public class MetadataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesAreCachedPerUser() throws Exception {
+        final FileSystem fs = FileSystem.getLocal(new Configuration());
+        final Path dir = new Path(folder.newFolder("dir").getAbsolutePath());
+        final MetadataCache cache = new MetadataCache(MetadataCache.DEFAULT_TTL_MILLIS, MetadataCache.DEFAULT_MAX_WEIGHT);
+        final MetadataCache alice = cache.forUser("alice");
+
+        alice.listStatus(fs, dir);
+        assertEquals(1, cache.getMisses());
+        alice.listStatus(fs, dir);
+        assertEquals(1, cache.getHits());
+
+        cache.forUser("bob").listStatus(fs, dir);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidatesSubtreeAndParentListingOfAllUsers() throws Exception {
+        final FileSystem fs = FileSystem.getLocal(new Configuration());
+        final File root = folder.newFolder("root");
+        final Path dir = new Path(new File(root, "dir").getAbsolutePath());
+        final Path sibling = new Path(new File(root, "dir2").getAbsolutePath());
+        fs.mkdirs(new Path(dir, "sub"));
+        fs.mkdirs(sibling);
+        final MetadataCache cache = new MetadataCache(MetadataCache.DEFAULT_TTL_MILLIS, MetadataCache.DEFAULT_MAX_WEIGHT);
+        for (String user : new String[]{"alice", "bob"}) {
+            final MetadataCache view = cache.forUser(user);
+            assertNotNull(view.getFileStatus(fs, sibling));
+            assertNotNull(view.getFileStatus(fs, new Path(dir, "sub")));
+            view.listStatus(fs, dir);
+            view.listStatus(fs, new Path(root.getAbsolutePath()));
+        }
+        assertEquals(8, cache.size());
+
+        cache.invalidate(fs, dir);
+
+        //only the statuses of the sibling (not a part of the subtree of "dir" despite the common prefix) are left
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,39 @@
+package com.avast.server.hdfsshell.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Vitasek L.
+ */
+public class ShellSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resolvesAgainstCurrentDir() throws Exception {
+        final ShellSession session = new ShellSession(new Configuration());
+        final FileSystem fs = session.getFileSystem();
+        final Path originalWorkingDirectory = fs.getWorkingDirectory();
+        try {
+            final String dir = folder.getRoot().getAbsolutePath();
+            session.setCurrentDir(dir);
+
+            assertSame(fs, session.getFileSystem());
+            assertEquals(dir, session.getCurrentDir());
+            assertEquals(new Path(dir, "file.txt"), session.resolve("file.txt"));
+            assertEquals(new Path("/tmp/file.txt"), session.resolve("/tmp/file.txt"));
+            assertEquals(fs.makeQualified(new Path(dir)), fs.getWorkingDirectory());
+        } finally {
+            fs.setWorkingDirectory(originalWorkingDirectory);
+        }
+    }
+}
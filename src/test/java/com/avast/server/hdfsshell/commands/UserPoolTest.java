@@ -0,0 +1,54 @@
+package com.avast.server.hdfsshell.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Vitasek L.
+ */
+public class UserPoolTest {
+
+    private final UserPool pool = new UserPool(2, UserPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void reusesUserOfPreviousLease() throws Exception {
+        final UserPool.Lease first = pool.acquire("alice");
+        first.close();
+        final UserPool.Lease second = pool.acquire("alice");
+        assertSame(first.getUser(), second.getUser());
+        assertEquals("alice", second.getUser().getUserName());
+        second.close();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUser() throws Exception {
+        final UserPool.Lease alice = pool.acquire("alice");
+        alice.close();
+        final UserPool.Lease bob = pool.acquire("bob");
+        pool.acquire("carol").close();
+        assertEquals(2, pool.size());
+
+        final UserPool.Lease aliceAgain = pool.acquire("alice");
+        assertNotSame(alice.getUser(), aliceAgain.getUser());
+        bob.close();
+        aliceAgain.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenAllUsersAreLeased() throws Exception {
+        pool.acquire("alice");
+        pool.acquire("bob");
+        pool.acquire("carol");
+    }
+}
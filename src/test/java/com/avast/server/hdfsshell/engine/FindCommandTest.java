@@ -0,0 +1,50 @@
+package com.avast.server.hdfsshell.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+/**
+ * @author Vitasek L.
+ */
+public class FindCommandTest {
+
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    public void parsesSupportedExpressions() {
+        assertEquals(Arrays.asList("/tmp", "/user"), parse("-P 4 /tmp /user -name *.txt -a -type f -print0"));
+        assertEquals(Arrays.asList("/tmp"), parse("/tmp -size +10M -and -mtime -1 -prune .staging -limit 5 -print"));
+        assertEquals(Arrays.asList("."), parse("-name *.txt"));
+    }
+
+    @Test
+    public void rejectsOtherExpressions() {
+        assertRejected("/tmp -name a -o -name b", "find: unsupported expression: -o");
+        assertRejected("/tmp -not -name a", "find: unsupported expression: -not");
+        assertRejected("/tmp -exec rm {} ;", "find: unsupported expression: -exec");
+        assertRejected("-name a /tmp", "find: Unexpected argument: /tmp");
+    }
+
+    private LinkedList<String> parse(String line) {
+        final LinkedList<String> args = new LinkedList<>(Arrays.asList(line.split(" ")));
+        newCommand().processOptions(args);
+        return args;
+    }
+
+    private void assertRejected(String line, String message) {
+        err.reset();
+        assertEquals(-1, newCommand().run(line.split(" ")));
+        assertEquals(message, err.toString().trim());
+    }
+
+    private FindCommand newCommand() {
+        return new FindCommand(new Configuration(), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+    }
+}
@@ -0,0 +1,61 @@
+package com.avast.server.hdfsshell.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+/**
+ * @author Vitasek L.
+ */
+public class GetMergeCommandTest {
+
+    @Test
+    public void mergesRawBytesInUnsignedOrder() throws IOException {
+        final byte[] merged = mergeSorted("-sort src dst",
+                bytes("a\r\n", "c\n", "｡\n", new byte[]{(byte) 0xff, (byte) 0xfe, '\n'}),
+                bytes("b\n", "😀"));
+        assertArrayEquals(bytes("a\r\n", "b\n", "c\n", "｡\n", "😀\n", new byte[]{(byte) 0xff, (byte) 0xfe, '\n'}), merged);
+    }
+
+    @Test
+    public void equalKeysKeepOrderOfParts() throws IOException {
+        final byte[] merged = mergeSorted("-sort -d ; -k 2 src dst",
+                bytes("x;1;first\n", "x;3\r\n"),
+                bytes("no key\n", "y;1;second\n", "y;2\n"));
+        assertArrayEquals(bytes("no key\n", "x;1;first\n", "y;1;second\n", "y;2\n", "x;3\r\n"), merged);
+    }
+
+    private static byte[] mergeSorted(String options, byte[]... parts) throws IOException {
+        final GetMergeCommand command = new GetMergeCommand(new Configuration(), new PrintStream(new ByteArrayOutputStream()),
+                new PrintStream(new ByteArrayOutputStream()));
+        command.processOptions(new LinkedList<>(Arrays.asList(options.split(" "))));
+        final List<NativeCommand.IOCallable<InputStream>> sources = new ArrayList<>();
+        for (byte[] part : parts) {
+            sources.add(() -> new ByteArrayInputStream(part));
+        }
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        command.mergeSorted(sources, 4, os);
+        return os.toByteArray();
+    }
+
+    private static byte[] bytes(Object... lines) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (Object line : lines) {
+            final byte[] data = line instanceof byte[] ? (byte[]) line : ((String) line).getBytes(StandardCharsets.UTF_8);
+            result.write(data, 0, data.length);
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package org.mvnsearch.spring.boot.shell;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.event.ParseResult;
+
+/**
+ * @author Vitasek L.
+ */
+public class CommandDispatcherTest {
+
+    private final CommandDispatcher dispatcher = new CommandDispatcher(Collections.singletonList(new TestCommands()));
+
+    @Test
+    public void dispatchesSimpleCommands() {
+        final ParseResult result = dispatcher.dispatch("  test  -e \"/tmp/a b\" ");
+        assertEquals("test", result.getMethod().getName());
+        assertArrayEquals(new Object[]{"-e \"/tmp/a b\""}, result.getArguments());
+
+        assertArrayEquals(new Object[]{"-e /tmp"}, dispatcher.dispatch("hdfs dfs -test -e /tmp").getArguments());
+        assertArrayEquals(new Object[]{null}, dispatcher.dispatch("test").getArguments());
+        assertArrayEquals(new Object[]{""}, dispatcher.dispatch("ls").getArguments());
+    }
+
+    @Test
+    public void skipsOtherCommands() {
+        assertNull(dispatcher.dispatch("exit"));
+        assertNull(dispatcher.dispatch("named --value 1"));
+        assertNull(dispatcher.dispatch("tests -e /tmp"));
+        assertNull(dispatcher.dispatch("help --command ls"));
+        assertNull(dispatcher.dispatch("help ls"));
+        assertEquals(4, dispatcher.size());
+    }
+
+    public static class TestCommands implements CommandMarker {
+
+        @CliCommand(value = {"test", "hdfs dfs -test"})
+        public String test(@CliOption(key = {""}) String path) {
+            return path;
+        }
+
+        @CliCommand(value = {"ls", "hdfs dfs -ls"})
+        public String ls(@CliOption(key = {""}, unspecifiedDefaultValue = "") String path) {
+            return path;
+        }
+
+        @CliCommand(value = "exit")
+        public void exit() {
+        }
+
+        @CliCommand(value = "help")
+        public String help(@CliOption(key = {"", "command"}) String command) {
+            return command;
+        }
+
+        @CliCommand(value = "named")
+        public String named(@CliOption(key = {"value"}) String value) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.mvnsearch.spring.boot.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.avast.server.hdfsshell.utils.ArgumentTokenizer;
+
+/**
+ * @author Vitasek L.
+ */
+public class UnixClientTest {
+
+    @Test
+    public void quotesArgumentsOfCommandLine() {
+        assertEquals("ls -R /tmp", UnixClient.commandLine(new String[]{"ls", "-R", "/tmp"}));
+        assertEquals("ls \"/tmp/a b\" \"\"", UnixClient.commandLine(new String[]{"ls", "/tmp/a b", ""}));
+        assertEquals("find / -name \"*.\\\"x\\\\\" \"it's\"", UnixClient.commandLine(new String[]{"find", "/", "-name", "*.\"x\\", "it's"}));
+    }
+
+    @Test
+    public void commandLineIsTokenizedToTheSameArguments() {
+        final String[] args = {"put", "a b", "c\td", "\"quoted\"", "back\\slash", "it's", ""};
+        assertEquals(Arrays.asList(args), ArgumentTokenizer.tokenize(UnixClient.commandLine(args)));
+    }
+
+    @Test
+    public void flushedOutputArrivesBeforeStatus() throws Exception {
+        final PipedInputStream fromDaemon = new PipedInputStream(FramedProtocol.MAX_FRAME_LENGTH * 2);
+        final FramedProtocol.FrameWriter daemon = new FramedProtocol.FrameWriter(new PipedOutputStream(fromDaemon), FramedProtocol.VERSION);
+        final Socket socket = new Socket() {
+            @Override
+            public InputStream getInputStream() {
+                return fromDaemon;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return new ByteArrayOutputStream();
+            }
+        };
+        final CountDownLatch received = new CountDownLatch(1);
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void flush() {
+                received.countDown();
+            }
+        };
+        final ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> result = client.submit(() -> UnixClient.execute(socket, "find /", stdout, new ByteArrayOutputStream()));
+            final OutputStream out = daemon.stream(FramedProtocol.STDOUT, 1);
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            final boolean arrived = received.await(10, TimeUnit.SECONDS);
+            daemon.writeStatus(1, 0);
+            daemon.flush();
+            assertTrue("Flushed output has to be sent before the status", arrived);
+            assertEquals("partial", stdout.toString("UTF-8"));
+            assertEquals(0, (int) result.get(10, TimeUnit.SECONDS));
+        } finally {
+            client.shutdownNow();
+        }
+    }
+}